@@ -0,0 +1,189 @@
+package de.teilecafe.tools;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BiConsumer;
+
+/**
+ * Asynchrone Variante des {@link PhoenixValue}. Die Erzeugung liefert ein {@link CompletableFuture},
+ * so dass {@link #getAsync()} den Aufrufer nie blockiert.
+ *
+ * Während ein neuer Wert erzeugt wird, bekommen alle Aufrufer den letzten gültigen Wert. Gibt es
+ * noch keinen, teilen sie sich das Future der laufenden Erzeugung. Wird der Wert verbrannt, während
+ * eine Erzeugung läuft, wird diese durch eine neue ersetzt und die Wartenden bekommen deren Ergebnis.
+ *
+ * @param <T> Typ des Werts.
+ * @author Bob Tehl
+ */
+public final class AsyncPhoenixValue<T> implements Flammable {
+    private final int timeToLive;
+    private final AsyncAsh<T> ash;
+    private final PhoenixValue.Fire.PhoenixRef fireRef;
+    private final AtomicReference<Rebirth<T>> inFlight = new AtomicReference<>();
+
+    /**
+     * Zuletzt erzeugter Wert. Eine einmal veröffentlichte Instanz wird nicht mehr verändert.
+     */
+    private volatile FleetingValue<T> value;
+    private int burnCount;
+
+    /**
+     * Konstruktor.
+     *
+     * @param timeToLive  Lebenszeit des Wertes in Millisekunden.
+     * @param ash         Implementierung zur asynchronen Erzeugung eines Wertes.
+     */
+    public AsyncPhoenixValue(final int timeToLive, final AsyncAsh<T> ash) {
+        super();
+        this.value = new FleetingValue<>();
+        this.timeToLive = timeToLive;
+        this.ash = ash;
+        this.fireRef = PhoenixValue.FIRE.register(this);
+    }
+
+    public AsyncPhoenixValue(final AsyncAsh<T> ash) {
+        this(Integer.MAX_VALUE, ash);
+    }
+
+    /**
+     * Liefert den Wert, ohne zu blockieren. Ist er verfallen, wird die Erzeugung angestoßen und
+     * solange der letzte Wert geliefert. Nur wenn es noch keinen Wert gibt, muss auf das Ergebnis
+     * der Erzeugung gewartet werden.
+     *
+     * @return Ein Future mit dem Wert.
+     */
+    public CompletableFuture<T> getAsync() {
+        final FleetingValue<T> current = value;
+        if (current.isValid()) {
+            return CompletableFuture.completedFuture(current.peek());
+        }
+
+        final CompletableFuture<T> next = rebirth();
+        final T last = current.peek();
+        return last != null ? CompletableFuture.completedFuture(last) : next;
+    }
+
+    /**
+     * Nimmt den Wert in die angegebenen Gruppen auf, siehe {@link PhoenixValue#inGroup(String...)}.
+     *
+     * @param groups Namen der Gruppen.
+     * @return Diese Instanz.
+     */
+    public AsyncPhoenixValue<T> inGroup(final String... groups) {
+        for (final String group : groups) {
+            Objects.checkParam(group, "group");
+            PhoenixValue.FIRE.join(fireRef, group);
+        }
+        return this;
+    }
+
+    /**
+     * Verwirft den Wert. Eine laufende Erzeugung wird abgebrochen und durch eine neue ersetzt.
+     * Verbrennen mehrere Threads gleichzeitig, startet nur derjenige die Ersatz-Erzeugung, der
+     * sie per CAS einträgt.
+     */
+    @Override
+    public void burn() {
+        final Rebirth<T> running;
+        synchronized (this) {
+            burnCount++;
+            value = new FleetingValue<>();
+            running = inFlight.get();
+        }
+
+        if (running != null) {
+            final Rebirth<T> replacement = new Rebirth<>(running.result);
+            if (inFlight.compareAndSet(running, replacement)) {
+                final CompletableFuture<T> superseded = running.source;
+                if (superseded != null) {
+                    superseded.cancel(false);
+                }
+                start(replacement);
+            }
+        }
+    }
+
+    /**
+     * Liefert die laufende Erzeugung oder startet eine neue.
+     */
+    private CompletableFuture<T> rebirth() {
+        while (true) {
+            final Rebirth<T> running = inFlight.get();
+            if (running != null) {
+                return running.result;
+            }
+
+            final Rebirth<T> started = new Rebirth<>(new CompletableFuture<T>());
+            if (inFlight.compareAndSet(null, started)) {
+                start(started);
+                return started.result;
+            }
+        }
+    }
+
+    private void start(final Rebirth<T> rebirth) {
+        final int burns;
+        synchronized (this) {
+            burns = burnCount;
+        }
+
+        CompletableFuture<T> source;
+        try {
+            source = ash.rebirth();
+        } catch (RuntimeException e) {
+            source = new CompletableFuture<>();
+            source.completeExceptionally(e);
+        }
+        rebirth.source = source;
+
+        source.whenComplete(new BiConsumer<T, Throwable>() {
+            @Override
+            public void accept(final T val, final Throwable error) {
+                synchronized (AsyncPhoenixValue.this) {
+                    // Wurde zwischendurch verbrannt, liefert die Ersatz-Erzeugung das Ergebnis.
+                    if (burns != burnCount) {
+                        return;
+                    }
+                    if (error == null) {
+                        value = new FleetingValue<>(val, timeToLive);
+                    }
+                    inFlight.compareAndSet(rebirth, null);
+                }
+
+                if (error == null) {
+                    rebirth.result.complete(val);
+                } else {
+                    rebirth.result.completeExceptionally(error);
+                }
+            }
+        });
+    }
+
+    /**
+     * Asynchrone Erzeugung des Wertes.
+     *
+     * @param <T> Typ des Werts.
+     */
+    public interface AsyncAsh<T> {
+
+        /**
+         * Stößt die Erzeugung des Wertes an, ohne zu blockieren.
+         *
+         * @return Ein Future, das mit dem neuen Wert erfüllt wird.
+         */
+        CompletableFuture<T> rebirth();
+    }
+
+    /**
+     * Eine laufende Erzeugung. Das Ergebnis bekommen alle Aufrufer, beim Verbrennen übernimmt eine
+     * neue Erzeugung mit eigener Quelle dasselbe Ergebnis.
+     */
+    private static final class Rebirth<T> {
+        private final CompletableFuture<T> result;
+        private volatile CompletableFuture<T> source;
+
+        private Rebirth(final CompletableFuture<T> result) {
+            this.result = result;
+        }
+    }
+}
@@ -2,11 +2,19 @@ package de.teilecafe.tools;
 
 import java.lang.ref.WeakReference;
 import java.util.ArrayList;
-import java.util.HashSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
 
 import static de.teilecafe.tools.Objects.equal;
 
@@ -39,17 +47,90 @@ public abstract class Caching {
      * @return Einen Cache mit den angegebenen Eigenschaften.
      */
     public static <K,V> Cache<K,V> createCache(final int size, final int timeToLive) {
-        final SimpleCache<K, V> cache = new SimpleCache<>(size, timeToLive);
+        return createCache(size, timeToLive, 0);
+    }
+
+    /**
+     * Erzeugt einen einfachen Cache, der zusätzlich die am häufigsten angefragten Schlüssel ermittelt.
+     *
+     * @param size          Maximale Anzahl der Elemente im Cache.
+     * @param timeToLive    Lebensdauer der Cacheeinträge in Millisekunden.
+     * @param hotKeys       Anzahl der gezählten Schlüssel für {@link Cache#getHotKeys(int)},
+     *                      <code>0</code> schaltet die Zählung ab.
+     * @param <K>           Typ des Schlüssels.
+     * @param <V>           Typ der Daten.
+     * @return Einen Cache mit den angegebenen Eigenschaften.
+     */
+    public static <K,V> Cache<K,V> createCache(final int size, final int timeToLive, final int hotKeys) {
+        return createCache(size, timeToLive, 0, hotKeys);
+    }
+
+    /**
+     * Erzeugt einen einfachen Cache, dessen Einträge zufällig gestreut verfallen. Werden viele Einträge
+     * gleichzeitig befüllt, z.B. beim Start, laufen sie so nicht alle im selben Moment ab.
+     *
+     * @param size          Maximale Anzahl der Elemente im Cache.
+     * @param timeToLive    Maximale Lebensdauer der Cacheeinträge in Millisekunden.
+     * @param jitter        Anteil der Lebensdauer zwischen <code>0</code> und <code>1</code>, um den
+     *                      die Lebensdauer eines Eintrags zufällig verkürzt wird.
+     * @param hotKeys       Anzahl der gezählten Schlüssel für {@link Cache#getHotKeys(int)},
+     *                      <code>0</code> schaltet die Zählung ab.
+     * @param <K>           Typ des Schlüssels.
+     * @param <V>           Typ der Daten.
+     * @return Einen Cache mit den angegebenen Eigenschaften.
+     */
+    public static <K,V> Cache<K,V> createCache(final int size, final int timeToLive, final double jitter,
+                                               final int hotKeys) {
+        final SimpleCache<K, V> cache = new SimpleCache<>(size, timeToLive, jitter, hotKeys);
         CACHE_REPO.add(cache);
         return cache;
     }
 
     private static final CacheRepo CACHE_REPO = new CacheRepo();
+    private static final Object NO_CHECKSUM = new Object();
+
+    /**
+     * Erwartete Prüfsumme für {@link Cache#putIfChecksum}, wenn zum Schlüssel noch kein gültiger
+     * Eintrag vorliegen darf.
+     */
+    public static final Object ABSENT = new Object();
 
     public static void clearAllCaches() {
         CACHE_REPO.clearAll();
     }
 
+    /**
+     * Legt ein gemeinsames Budget für alle Caches fest. Statt der jeweils angegebenen Größe
+     * teilen sich alle lebenden Caches dann maximal <code>maxEntries</code> Einträge. Die Aufteilung
+     * richtet sich nach den Treffern je Eintrag und wird regelmäßig neu berechnet, die Anteile
+     * verworfener Caches werden dabei wieder verteilt. Die beim Erzeugen angegebene Größe bleibt
+     * die Obergrenze des einzelnen Caches.
+     *
+     * @param maxEntries        Maximale Anzahl der Einträge aller Caches zusammen,
+     *                          <code>0</code> schaltet das Budget ab.
+     * @param rebalanceInterval Abstand der Neuverteilung in Millisekunden.
+     */
+    public static void setGlobalBudget(final int maxEntries, final int rebalanceInterval) {
+        CACHE_REPO.setBudget(maxEntries, rebalanceInterval);
+    }
+
+    /**
+     * Öffnet einen Gültigkeitsbereich für anfragebezogene Caches, z.B. für die Dauer einer Anfrage.
+     * Gedacht für try-with-resources:
+     *
+     * <pre>
+     * try (final Caching.RequestScope scope = Caching.openScope()) {
+     *     final Caching.Cache&lt;String, Config&gt; configs = scope.cache(CONFIG_CACHE);
+     *     ...
+     * }
+     * </pre>
+     *
+     * @return Ein neuer, offener Gültigkeitsbereich.
+     */
+    public static RequestScope openScope() {
+        return new RequestScope();
+    }
+
     /**
      * Cache mit Zugriff per Prüfsumme oder ohne.
      */
@@ -108,44 +189,279 @@ public abstract class Caching {
          */
         boolean contains(final K key, final Object checksum);
 
+        /**
+         * Liefert die Prüfsumme des gültigen Eintrags zum Schlüssel.
+         *
+         * @param key Schlüssel.
+         * @return Prüfsumme des Eintrags oder {@link Caching#ABSENT}, wenn kein gültiger Eintrag vorliegt.
+         */
+        Object getChecksum(final K key);
+
+        /**
+         * Speichert den Wert nur, wenn der gültige Eintrag zum Schlüssel noch die erwartete Prüfsumme hat.
+         * Prüfung und Speichern erfolgen atomar unter der Sperre des Caches, so dass konkurrierende
+         * Schreiber keine Aktualisierung mit einem veralteten Stand überschreiben können.
+         *
+         * @param key              Schlüssel.
+         * @param expectedChecksum Erwartete Prüfsumme des aktuellen Eintrags oder {@link Caching#ABSENT},
+         *                         wenn noch kein gültiger Eintrag vorliegen darf.
+         * @param newValue         Neuer Wert.
+         * @param newChecksum      Prüfsumme des neuen Wertes.
+         * @return <code>true</code>, wenn der Wert gespeichert wurde, sonst <code>false</code>.
+         */
+        default boolean putIfChecksum(final K key, final Object expectedChecksum,
+                                      final V newValue, final Object newChecksum) {
+            synchronized (this) {
+                if (!equal(getChecksum(key), expectedChecksum)) {
+                    return false;
+                }
+                put(key, newValue, newChecksum);
+                return true;
+            }
+        }
+
+        /**
+         * Liefert den Wert zum Schlüssel mit der angegebenen Prüfsumme. Liegt kein solcher Wert vor,
+         * wird er ohne Sperre berechnet und anschließend gespeichert. Hat ein anderer Schreiber in der
+         * Zwischenzeit bereits einen Wert mit dieser Prüfsumme abgelegt, gewinnt dieser.
+         *
+         * @param key      Schlüssel.
+         * @param checksum Prüfsumme, die der Wert im Cache haben muss.
+         * @param function Berechnung des Wertes.
+         * @return Wert im Cache mit der angegebenen Prüfsumme.
+         */
+        default V computeIfChecksumMismatch(final K key, final Object checksum,
+                                            final Function<? super K, ? extends V> function) {
+            final V cached = get(key, checksum);
+            if (cached != null) {
+                return cached;
+            }
+
+            // Die Berechnung läuft ohne Sperre, damit andere Zugriffe nicht warten müssen.
+            final V computed = function.apply(key);
+
+            synchronized (this) {
+                final V current = get(key, checksum);
+                if (current != null) {
+                    return current;
+                }
+                put(key, computed, checksum);
+                return computed;
+            }
+        }
+
+        /**
+         * Ersetzt den Wert zum Schlüssel, aber nur wenn bereits ein gültiger Eintrag vorliegt.
+         * Auch ein Eintrag mit dem Wert <code>null</code> gilt dabei als vorhanden.
+         *
+         * @param key      Schlüssel.
+         * @param value    Neuer Wert.
+         * @param checksum Prüfsumme des neuen Wertes.
+         * @return <code>true</code>, wenn ein Eintrag ersetzt wurde, sonst <code>false</code>.
+         */
+        default boolean replace(final K key, final V value, final Object checksum) {
+            synchronized (this) {
+                if (getChecksum(key) == ABSENT) {
+                    return false;
+                }
+                put(key, value, checksum);
+                return true;
+            }
+        }
+
         /**
          * Leert den Cache.
          */
         void clear();
+
+        /**
+         * Liefert die am häufigsten angefragten Schlüssel samt geschätzter Zugriffszahl.
+         * Gezählt wird nur, wenn der Cache mit Zählung erzeugt wurde.
+         *
+         * @param count Maximale Anzahl der gelieferten Schlüssel.
+         * @return Die häufigsten Schlüssel absteigend sortiert, ohne Zählung eine leere Liste.
+         */
+        default List<HotKeys.HotKey<K>> getHotKeys(final int count) {
+            return Collections.emptyList();
+        }
     }
 
     private static class CacheRepo {
-        private final List<WeakReference<Cache>> caches = new ArrayList<>();
+        private final List<WeakReference<SimpleCache>> caches = new ArrayList<>();
+        private int budget;
+        private ScheduledExecutorService scheduler;
+        private ScheduledFuture<?> rebalancing;
 
-        public final void add(final Cache cache) {
+        public final synchronized void add(final SimpleCache cache) {
             caches.add(new WeakReference<>(cache));
+            if (budget > 0) {
+                rebalance(false);
+            }
+        }
+
+        public final synchronized void clearAll() {
+            for (final SimpleCache cache : live()) {
+                cache.clear();
+            }
+        }
+
+        public final synchronized void setBudget(final int maxEntries, final int rebalanceInterval) {
+            budget = Math.max(0, maxEntries);
+            if (rebalancing != null) {
+                rebalancing.cancel(false);
+                rebalancing = null;
+            }
+
+            if (budget > 0) {
+                if (scheduler == null) {
+                    scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                        @Override
+                        public Thread newThread(final Runnable runnable) {
+                            final Thread thread = new Thread(runnable, "Caching-Budget");
+                            thread.setDaemon(true);
+                            return thread;
+                        }
+                    });
+                }
+                final long interval = Math.max(1, rebalanceInterval);
+                rebalancing = scheduler.scheduleWithFixedDelay(new Runnable() {
+                    @Override
+                    public void run() {
+                        rebalance(true);
+                    }
+                }, interval, interval, TimeUnit.MILLISECONDS);
+                rebalance(false);
+            } else {
+                for (final SimpleCache cache : live()) {
+                    cache.resize(cache.maxSize);
+                }
+            }
+        }
+
+        /**
+         * Verteilt das Budget anhand der Treffer je Eintrag neu. Jeder Cache bekommt einen Mindestanteil.
+         * Der Rest geht im Verhältnis der Nützlichkeit an die Caches, aber jeweils nur bis zu ihrer
+         * aktuellen Größe zuzüglich etwas Luft zum Wachsen. Was danach übrig bleibt, z.B. solange noch
+         * kein Cache Treffer hatte, bekommen zuerst die Caches, die bereits verdrängen müssen, und zwar
+         * im Verhältnis ihrer Obergrenzen. Ein Rest wird zuletzt auf alle Caches so verteilt.
+         *
+         * @param sample <code>true</code>, wenn die Treffer seit der letzten Neuverteilung ausgewertet
+         *               werden sollen. Sonst gilt die zuletzt ermittelte Nützlichkeit, damit z.B. das
+         *               Anlegen vieler Caches die Statistik nicht verfälscht.
+         */
+        private synchronized void rebalance(final boolean sample) {
+            if (budget <= 0) {
+                return;
+            }
+
+            final List<SimpleCache> live = live();
+            final int count = live.size();
+            if (count == 0) {
+                return;
+            }
+
+            final double[] utility = new double[count];
+            final double[] maxSizes = new double[count];
+            final double[] pressure = new double[count];
+            final int[] demand = new int[count];
+            final int[] limit = new int[count];
+            final int[] share = new int[count];
+            // Die Mindestanteile zusammen dürfen das Budget nie übersteigen.
+            final int floor = Math.min(budget / count, Math.max(1, budget / (count * 4)));
+            int remaining = budget;
+
+            for (int i = 0; i < count; i++) {
+                final SimpleCache cache = live.get(i);
+                utility[i] = sample ? cache.sample() : cache.utility;
+                maxSizes[i] = cache.maxSize;
+                limit[i] = cache.maxSize;
+                final int size = cache.size();
+                pressure[i] = cache.isFull() ? cache.maxSize : 0;
+                demand[i] = (int) Math.min(cache.maxSize, Math.max(floor, size + Math.max(1L, size / 4)));
+                share[i] = Math.min(cache.maxSize, floor);
+                remaining -= share[i];
+            }
+
+            remaining = distribute(remaining, share, demand, utility);
+            remaining = distribute(remaining, share, limit, pressure);
+            distribute(remaining, share, limit, maxSizes);
+
+            for (int i = 0; i < count; i++) {
+                live.get(i).resize(share[i]);
+            }
         }
 
-        public final void clearAll() {
-            final Set<WeakReference> dead = new HashSet<>();
-            for (final WeakReference<Cache> weakRef : caches) {
-                final Cache cache = weakRef.get();
+        /**
+         * Verteilt die Einträge im Verhältnis der Gewichte, ohne dass ein Anteil seine Grenze überschreitet.
+         * Was ein Cache wegen seiner Grenze nicht nehmen kann, geht in weiteren Runden an die übrigen.
+         *
+         * @return Die Anzahl der nicht verteilten Einträge.
+         */
+        private static int distribute(int remaining, final int[] share, final int[] limit, final double[] weight) {
+            while (remaining > 0) {
+                double total = 0;
+                for (int i = 0; i < share.length; i++) {
+                    if (share[i] < limit[i]) {
+                        total += weight[i];
+                    }
+                }
+                if (total <= 0) {
+                    break;
+                }
+
+                int granted = 0;
+                for (int i = 0; i < share.length && granted < remaining; i++) {
+                    final int open = limit[i] - share[i];
+                    if (open > 0 && weight[i] > 0) {
+                        final int extra = (int) Math.min(Math.min(open, remaining - granted),
+                                Math.max(1, (long) (remaining * weight[i] / total)));
+                        share[i] += extra;
+                        granted += extra;
+                    }
+                }
+                remaining -= granted;
+            }
+            return remaining;
+        }
+
+        /**
+         * Liefert alle noch lebenden Caches und vergisst die bereits verworfenen.
+         */
+        private List<SimpleCache> live() {
+            final List<SimpleCache> live = new ArrayList<>(caches.size());
+            for (final Iterator<WeakReference<SimpleCache>> iterator = caches.iterator(); iterator.hasNext(); ) {
+                final SimpleCache cache = iterator.next().get();
                 if (cache == null) {
-                    dead.add(weakRef);
+                    iterator.remove();
                 } else {
-                    cache.clear();
+                    live.add(cache);
                 }
             }
-            caches.removeAll(dead);
+            return live;
         }
     }
 
     private static class SimpleCache<K,V> implements Cache<K,V> {
-        private static final Object NO_CHECKSUM = new Object();
         private final Map<K, CacheEntry<V>> cache;
         private final int timeToLive;
+        private final double jitter;
+        private final HotKeys<K> hotKeys;
+        private final int maxSize;
+        private int capacity;
+        private long hits;
+        private double hitRate;
+        private double utility;
 
-        private SimpleCache(final int count, final int timeToLive) {
+        private SimpleCache(final int count, final int timeToLive, final double jitter, final int hotKeys) {
             this.timeToLive = timeToLive;
+            this.jitter = jitter;
+            this.hotKeys = hotKeys > 0 ? new HotKeys<K>(hotKeys) : null;
+            this.maxSize = count;
+            this.capacity = count;
             cache = new LinkedHashMap<K, CacheEntry<V>>(count, 0.75f, true) {
                 @Override
                 protected boolean removeEldestEntry(final Map.Entry<K, CacheEntry<V>> eldest) {
-                    return size() > count;
+                    return size() > capacity;
                 }
             };
         }
@@ -156,8 +472,8 @@ public abstract class Caching {
         }
 
         @Override
-        public void put(final K key, final V value, final Object checksum) {
-            cache.put(key, new CacheEntry<>(value, timeToLive, checksum));
+        public synchronized void put(final K key, final V value, final Object checksum) {
+            cache.put(key, new CacheEntry<>(value, timeToLive, jitter, checksum));
         }
 
         @Override
@@ -166,35 +482,119 @@ public abstract class Caching {
         }
 
         @Override
-        public V get(final K key, final Object checksum) {
+        public synchronized V get(final K key, final Object checksum) {
+            track(key);
             final CacheEntry<V> entry = cache.get(key);
             if (entry != null && entry.isValid() && equal(entry.getChecksum(), checksum)) {
+                hits++;
                 return entry.get();
             }
             return null;
         }
 
+        /**
+         * Wie die Standardimplementierung, aber die erneute Prüfung nach der Berechnung zählt nicht als
+         * weiterer Zugriff, damit Trefferquote und häufige Schlüssel nicht verfälscht werden.
+         */
+        @Override
+        public V computeIfChecksumMismatch(final K key, final Object checksum,
+                                           final Function<? super K, ? extends V> function) {
+            final V cached = get(key, checksum);
+            if (cached != null) {
+                return cached;
+            }
+
+            final V computed = function.apply(key);
+
+            synchronized (this) {
+                final CacheEntry<V> entry = cache.get(key);
+                if (entry != null && entry.isValid() && equal(entry.getChecksum(), checksum)) {
+                    final V current = entry.get();
+                    if (current != null) {
+                        return current;
+                    }
+                }
+                put(key, computed, checksum);
+                return computed;
+            }
+        }
+
         @Override
         public boolean contains(final K key) {
             return contains(key, NO_CHECKSUM);
         }
 
         @Override
-        public boolean contains(final K key, final Object checksum) {
+        public synchronized boolean contains(final K key, final Object checksum) {
+            track(key);
             final CacheEntry<V> entry = cache.get(key);
             return entry != null && entry.isValid() && equal(entry.getChecksum(), checksum);
         }
 
         @Override
-        public void clear() {
+        public synchronized Object getChecksum(final K key) {
+            final CacheEntry<V> entry = cache.get(key);
+            return entry != null && entry.isValid() ? entry.getChecksum() : ABSENT;
+        }
+
+        @Override
+        public synchronized void clear() {
             cache.clear();
+            if (hotKeys != null) {
+                hotKeys.clear();
+            }
+        }
+
+        @Override
+        public List<HotKeys.HotKey<K>> getHotKeys(final int count) {
+            return hotKeys == null ? Collections.<HotKeys.HotKey<K>>emptyList() : hotKeys.top(count);
+        }
+
+        /**
+         * Ändert die maximale Anzahl der Einträge und verdrängt bei Bedarf die ältesten.
+         */
+        private synchronized void resize(final int newCapacity) {
+            capacity = Math.max(0, Math.min(newCapacity, maxSize));
+            final Iterator<CacheEntry<V>> eldest = cache.values().iterator();
+            while (cache.size() > capacity && eldest.hasNext()) {
+                eldest.next();
+                eldest.remove();
+            }
+        }
+
+        private synchronized int size() {
+            return cache.size();
+        }
+
+        /**
+         * @return <code>true</code>, wenn der Cache für neue Einträge alte verdrängen muss.
+         */
+        private synchronized boolean isFull() {
+            return cache.size() >= capacity;
+        }
+
+        /**
+         * Ermittelt die Treffer je Eintrag seit dem letzten Aufruf, geglättet über die vorherigen Aufrufe.
+         * Ein Cache ohne Treffer hat keine Nützlichkeit und bekommt nur den Mindestanteil.
+         */
+        private synchronized double sample() {
+            hitRate = (hitRate + hits) / 2;
+            hits = 0;
+            utility = hitRate / Math.max(1, cache.size());
+            return utility;
+        }
+
+        private void track(final K key) {
+            if (hotKeys != null) {
+                hotKeys.offer(key);
+            }
         }
 
         private static class CacheEntry<V> extends FleetingValue<V> {
             private final Object checksum;
 
-            private CacheEntry(final V value, final int timeToLive, final Object checksum) {
-                super(value, timeToLive);
+            private CacheEntry(final V value, final int timeToLive, final double jitter, final Object checksum) {
+                super(value, timeToLive, jitter);
                 this.checksum = checksum;
             }
 
@@ -203,4 +603,221 @@ public abstract class Caching {
             }
         }
     }
+
+    /**
+     * Gültigkeitsbereich für anfragebezogene Caches.
+     *
+     * Die über {@link #cache(Cache)} gelieferten Caches merken sich gelesene Werte in einer kleinen,
+     * nicht synchronisierten Map und fragen den gemeinsamen Cache nur beim ersten Zugriff je Schlüssel.
+     * Mit {@link #close()} werden alle lokalen Werte auf einen Schlag verworfen, danach reichen die
+     * Caches jeden Zugriff direkt an den gemeinsamen Cache durch.
+     *
+     * Der Bereich wird ausschließlich als Objekt weitergereicht und hängt an keinem Thread, er
+     * funktioniert also auch mit virtuellen Threads. Er ist aber nicht threadsicher und darf nur
+     * von dem Thread benutzt werden, der die Anfrage bearbeitet.
+     */
+    public static final class RequestScope implements AutoCloseable {
+        private final Map<Cache<?, ?>, ScopedCache<?, ?>> caches = new IdentityHashMap<>();
+        private boolean open = true;
+
+        private RequestScope() {
+            super();
+        }
+
+        /**
+         * Liefert einen anfragebezogenen Cache, der auf den angegebenen gemeinsamen Cache durchgreift.
+         * Alle Aufrufe mit demselben gemeinsamen Cache liefern innerhalb des Bereichs dieselbe Instanz,
+         * so dass sich z.B. verschiedene Komponenten einer Anfrage die lokalen Werte teilen.
+         *
+         * Schreibende Zugriffe gehen immer auch an den gemeinsamen Cache, auch {@link Cache#clear()}
+         * leert ihn und nicht nur die lokalen Werte.
+         *
+         * @param shared Gemeinsamer Cache.
+         * @param <K>    Typ des Schlüssels.
+         * @param <V>    Typ der Daten.
+         * @return Ein Cache, der nur innerhalb dieses Gültigkeitsbereichs lokal zwischenspeichert.
+         */
+        @SuppressWarnings("unchecked")
+        public <K,V> Cache<K,V> cache(final Cache<K,V> shared) {
+            Objects.checkParam(shared, "shared");
+            if (!open) {
+                final ScopedCache<K,V> cache = new ScopedCache<>(shared);
+                cache.detach();
+                return cache;
+            }
+            ScopedCache<K,V> cache = (ScopedCache<K,V>) caches.get(shared);
+            if (cache == null) {
+                cache = new ScopedCache<>(shared);
+                caches.put(shared, cache);
+            }
+            return cache;
+        }
+
+        /**
+         * @return <code>true</code>, solange der Bereich nicht geschlossen wurde.
+         */
+        public boolean isOpen() {
+            return open;
+        }
+
+        /**
+         * Schließt den Bereich und verwirft damit alle lokal gespeicherten Werte.
+         */
+        @Override
+        public void close() {
+            open = false;
+            for (final ScopedCache<?, ?> cache : caches.values()) {
+                cache.detach();
+            }
+            caches.clear();
+        }
+    }
+
+    private static class ScopedCache<K,V> implements Cache<K,V> {
+        private final Cache<K,V> shared;
+        private Map<K, ScopedEntry<V>> local = new HashMap<>();
+
+        private ScopedCache(final Cache<K,V> shared) {
+            this.shared = shared;
+        }
+
+        @Override
+        public void put(final K key, final V value) {
+            shared.put(key, value);
+            remember(key, value, NO_CHECKSUM);
+        }
+
+        @Override
+        public void put(final K key, final V value, final Object checksum) {
+            shared.put(key, value, checksum);
+            remember(key, value, checksum);
+        }
+
+        @Override
+        public V get(final K key) {
+            final ScopedEntry<V> entry = lookup(key, NO_CHECKSUM);
+            if (entry != null) {
+                return entry.value;
+            }
+            final V value = shared.get(key);
+            if (value != null) {
+                remember(key, value, NO_CHECKSUM);
+            }
+            return value;
+        }
+
+        @Override
+        public V get(final K key, final Object checksum) {
+            final ScopedEntry<V> entry = lookup(key, checksum);
+            if (entry != null) {
+                return entry.value;
+            }
+            final V value = shared.get(key, checksum);
+            if (value != null) {
+                remember(key, value, checksum);
+            }
+            return value;
+        }
+
+        @Override
+        public boolean contains(final K key) {
+            return lookup(key, NO_CHECKSUM) != null || shared.contains(key);
+        }
+
+        @Override
+        public boolean contains(final K key, final Object checksum) {
+            return lookup(key, checksum) != null || shared.contains(key, checksum);
+        }
+
+        @Override
+        public Object getChecksum(final K key) {
+            return shared.getChecksum(key);
+        }
+
+        @Override
+        public boolean putIfChecksum(final K key, final Object expectedChecksum,
+                                     final V newValue, final Object newChecksum) {
+            if (shared.putIfChecksum(key, expectedChecksum, newValue, newChecksum)) {
+                remember(key, newValue, newChecksum);
+                return true;
+            }
+            forget(key);
+            return false;
+        }
+
+        @Override
+        public V computeIfChecksumMismatch(final K key, final Object checksum,
+                                           final Function<? super K, ? extends V> function) {
+            final ScopedEntry<V> entry = lookup(key, checksum);
+            if (entry != null) {
+                return entry.value;
+            }
+            final V value = shared.computeIfChecksumMismatch(key, checksum, function);
+            remember(key, value, checksum);
+            return value;
+        }
+
+        @Override
+        public boolean replace(final K key, final V value, final Object checksum) {
+            if (shared.replace(key, value, checksum)) {
+                remember(key, value, checksum);
+                return true;
+            }
+            forget(key);
+            return false;
+        }
+
+        /**
+         * Verwirft die lokalen Werte und leert auch den gemeinsamen Cache.
+         */
+        @Override
+        public void clear() {
+            if (local != null) {
+                local.clear();
+            }
+            shared.clear();
+        }
+
+        @Override
+        public List<HotKeys.HotKey<K>> getHotKeys(final int count) {
+            return shared.getHotKeys(count);
+        }
+
+        /**
+         * Verwirft die lokalen Werte, alle weiteren Zugriffe gehen direkt an den gemeinsamen Cache.
+         */
+        private void detach() {
+            local = null;
+        }
+
+        private ScopedEntry<V> lookup(final K key, final Object checksum) {
+            if (local == null) {
+                return null;
+            }
+            final ScopedEntry<V> entry = local.get(key);
+            return entry != null && equal(entry.checksum, checksum) ? entry : null;
+        }
+
+        private void forget(final K key) {
+            if (local != null) {
+                local.remove(key);
+            }
+        }
+
+        private void remember(final K key, final V value, final Object checksum) {
+            if (local != null) {
+                local.put(key, new ScopedEntry<>(value, checksum));
+            }
+        }
+
+        private static class ScopedEntry<V> {
+            private final V value;
+            private final Object checksum;
+
+            private ScopedEntry(final V value, final Object checksum) {
+                this.value = value;
+                this.checksum = checksum;
+            }
+        }
+    }
 }
@@ -16,9 +16,9 @@ import java.util.HashSet;
 import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
-
-import static de.teilecafe.tools.Objects.asSet;
+import java.util.WeakHashMap;
 
 /**
  * Funktionen, deren Benutzung die Arbeit mit Reflection erleichtern
@@ -32,6 +32,19 @@ public class Classes
     public static final Class[] EMPTY_CLASS_ARRAY = {};
     public static final String TYPE_FIELD_NAME = "TYPE";
 
+    /**
+     * Hierarchie pro Klasse. Ein {@link ClassValue} hängt die Daten an die Klasse selbst,
+     * so dass kein ClassLoader durch den Cache festgehalten wird.
+     */
+    private static final ClassValue<Hierarchy> HIERARCHY = new ClassValue<Hierarchy>()
+    {
+        @Override
+        protected Hierarchy computeValue(final Class<?> type)
+        {
+            return new Hierarchy(type);
+        }
+    };
+
     /**
      * Prüft, ob die Instanz zu der angegebenen Klasse prinzipiell kompatibel ist.
      *
@@ -180,8 +193,9 @@ public class Classes
             return Integer.MAX_VALUE;
         }
 
-        final Indexer indexer = new Indexer(getSuperClasses(child));
-        return indexer.indexOf(parent) - indexer.indexOf(child);
+        // Die Klasse selbst ist nicht unter ihren Superklassen, der Abstand ist also der Index plus eins.
+        // Liegt die Superklasse nicht in der Hierarchie (Object bei Interfaces), ergibt das 0.
+        return HIERARCHY.get(child).distances.indexOf(parent) + 1;
     }
 
     /**
@@ -300,7 +314,7 @@ public class Classes
         final List<Class> classes = new LinkedList<Class>();
 
         classes.add(clazz);
-        classes.addAll(Objects.asList(getSuperClasses(clazz)));
+        classes.addAll(Objects.asList(HIERARCHY.get(clazz).superClasses));
 
         for (Class cls : classes)
         {
@@ -418,62 +432,26 @@ public class Classes
             return classA;
         }
 
-        final List<Class> classesA = new ArrayList<Class>();
-        classesA.add(classA);
-
-        for (Class clazz : getSuperClasses(classA))
-        {
-            if (allowInterfaces || !clazz.isInterface())
-            {
-                classesA.add(clazz);
-            }
-        }
-
-        final Set<Class> classesB = new HashSet<>();
-        classesB.add(classB);
-        classesB.addAll(asSet(getSuperClasses(classB)));
-
-        classesA.retainAll(classesB);
-        final Class first = Objects.first(classesA);
-        return first == null ? Object.class : first;
+        return HIERARCHY.get(classA).getCommonSuperClass(classA, classB, allowInterfaces);
     }
 
     /**
      * Liest alle Klassen und Interfaces denen diese Klasse angehört.
      * Angefangen wird bei den Interfaces, dann folgen Ebenenweise deren Parents
-     * und dann gehts mit der Superklasse der angegebenen Klasse weiter. Der
-     * letzte Teil ist rekursiv implementiert.
+     * und dann gehts mit der Superklasse der angegebenen Klasse weiter.
+     * Die Hierarchie wird pro Klasse nur einmal ermittelt, geliefert wird eine Kopie.
      */
     public static Class[] getSuperClasses(final Class clazz)
     {
-        final List<Class> result = new ArrayList<Class>();
-
-        result.add(clazz);
-
-        // Einlesen aller Interfaces und ihrer Vorfahren
-        int i = 0;
-        while (i < result.size())
-        {
-            final Class nextClass = result.get(i);
-            if (nextClass != null)
-            {
-                result.addAll(Objects.asList(nextClass.getInterfaces()));
-            }
-            i++;
-        }
-
-        // Weiter mit der Superklasse
-        final Class superClass = clazz.getSuperclass();
-        if (superClass != null)
-        {
-            result.add(superClass);
-            result.addAll(Objects.asList(getSuperClasses(superClass)));
-        }
+        return HIERARCHY.get(clazz).superClasses.clone();
+    }
 
-        // Eindeutigkeit herstellen
-        final Set<Class> unique = new LinkedHashSet<Class>(result);
-        unique.remove(clazz);
-        return unique.toArray(new Class[unique.size()]);
+    /**
+     * Liefert die Kette der Superklassen ohne Interfaces, angefangen bei der direkten Superklasse.
+     */
+    public static Class[] getSuperClassChain(final Class clazz)
+    {
+        return HIERARCHY.get(clazz).superClassChain.clone();
     }
 
     /**
@@ -578,6 +556,119 @@ public class Classes
                 + associatedClass.getName() + "'.");
     }
 
+    /**
+     * Hierarchie-Daten einer Klasse. Die Arrays werden nach dem Aufbau nicht mehr verändert.
+     */
+    private static final class Hierarchy
+    {
+        private final Class[] superClasses;
+        private final Set<Class> superClassSet;
+        private final Class[] superClassChain;
+
+        /**
+         * Index der Superklassen für {@link Classes#difference(Class, Class)}. Klassen werden über ihre Identität verglichen.
+         */
+        private final Indexer distances;
+
+        /**
+         * Bereits ermittelte gemeinsame Superklassen, jeweils ohne und mit Interfaces. Die andere Klasse
+         * wird nur schwach referenziert, das Ergebnis ist eine Superklasse dieser Klasse und hält daher
+         * keinen zusätzlichen ClassLoader fest.
+         */
+        private final Map<Class, Class[]> commonSuperClasses = Collections.synchronizedMap(new WeakHashMap<Class, Class[]>());
+
+        private Hierarchy(final Class<?> clazz)
+        {
+            final List<Class> result = new ArrayList<Class>();
+
+            result.add(clazz);
+
+            // Einlesen aller Interfaces und ihrer Vorfahren
+            int i = 0;
+            while (i < result.size())
+            {
+                final Class nextClass = result.get(i);
+                if (nextClass != null)
+                {
+                    result.addAll(Objects.asList(nextClass.getInterfaces()));
+                }
+                i++;
+            }
+
+            // Weiter mit der Superklasse, deren Hierarchie schon im Cache liegt
+            final Class superClass = clazz.getSuperclass();
+            final Hierarchy superHierarchy = superClass != null ? HIERARCHY.get(superClass) : null;
+            if (superHierarchy != null)
+            {
+                result.add(superClass);
+                result.addAll(Objects.asList(superHierarchy.superClasses));
+            }
+
+            // Eindeutigkeit herstellen
+            final Set<Class> unique = new LinkedHashSet<Class>(result);
+            unique.remove(clazz);
+            superClasses = unique.toArray(new Class[unique.size()]);
+            superClassSet = Collections.unmodifiableSet(new HashSet<Class>(unique));
+            distances = new Indexer(superClasses, Indexer.Strategy.IDENTITY);
+
+            if (superHierarchy == null)
+            {
+                superClassChain = EMPTY_CLASS_ARRAY;
+            }
+            else
+            {
+                superClassChain = new Class[superHierarchy.superClassChain.length + 1];
+                superClassChain[0] = superClass;
+                System.arraycopy(superHierarchy.superClassChain, 0, superClassChain, 1, superHierarchy.superClassChain.length);
+            }
+        }
+
+        /**
+         * Liefert die speziellste gemeinsame Klasse von <code>clazz</code>, deren Hierarchie dies ist,
+         * und <code>other</code>. Das Ergebnis wird pro Klassenpaar gemerkt.
+         */
+        private Class getCommonSuperClass(final Class clazz, final Class other, final boolean allowInterfaces)
+        {
+            final int slot = allowInterfaces ? 1 : 0;
+            final Class[] cached = commonSuperClasses.get(other);
+            if (cached != null && cached[slot] != null)
+            {
+                return cached[slot];
+            }
+
+            final Set<Class> otherClasses = HIERARCHY.get(other).superClassSet;
+            Class result = Object.class;
+            if (clazz.equals(other) || otherClasses.contains(clazz))
+            {
+                result = clazz;
+            }
+            else
+            {
+                for (final Class superClass : superClasses)
+                {
+                    if ((allowInterfaces || !superClass.isInterface())
+                            && (superClass.equals(other) || otherClasses.contains(superClass)))
+                    {
+                        result = superClass;
+                        break;
+                    }
+                }
+            }
+
+            synchronized (commonSuperClasses)
+            {
+                Class[] results = commonSuperClasses.get(other);
+                if (results == null)
+                {
+                    results = new Class[2];
+                    commonSuperClasses.put(other, results);
+                }
+                results[slot] = result;
+            }
+            return result;
+        }
+    }
+
     /**
      * Interface für einen InvocationHandler, der Serialisiert werden kann.
      */
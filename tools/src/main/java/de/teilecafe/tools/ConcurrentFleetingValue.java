@@ -0,0 +1,141 @@
+package de.teilecafe.tools;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+
+/**
+ * Threadsichere Variante des {@link FleetingValue}. Wert und Haltbarkeit werden immer gemeinsam
+ * veröffentlicht, ein Leser sieht also nie einen neuen Wert mit einer alten Haltbarkeit oder umgekehrt.
+ *
+ * Umgesetzt ist das als Sequenz-Sperre: Schreiber machen die Sequenznummer während des Schreibens
+ * ungerade, Leser wiederholen ihren Zugriff, wenn sich die Nummer währenddessen geändert hat. Lesen
+ * kommt dadurch ohne Sperre aus und weder Lesen noch Schreiben erzeugen neue Objekte.
+ *
+ * @param <T> Typ des Wertes.
+ * @author Bob Tehl
+ */
+public class ConcurrentFleetingValue<T> {
+    private static final VarHandle SEQUENCE;
+    private static final VarHandle VALUE;
+    private static final VarHandle VALID_UNTIL;
+
+    static {
+        try {
+            final MethodHandles.Lookup lookup = MethodHandles.lookup();
+            SEQUENCE = lookup.findVarHandle(ConcurrentFleetingValue.class, "sequence", long.class);
+            VALUE = lookup.findVarHandle(ConcurrentFleetingValue.class, "value", Object.class);
+            VALID_UNTIL = lookup.findVarHandle(ConcurrentFleetingValue.class, "validUntil", long.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    @SuppressWarnings("unused")
+    private long sequence;
+    @SuppressWarnings("unused")
+    private Object value;
+    @SuppressWarnings("unused")
+    private long validUntil;
+
+    public ConcurrentFleetingValue() {
+        this(null, 0);
+    }
+
+    public ConcurrentFleetingValue(final T value, final int timeToLive) {
+        set(value, timeToLive);
+    }
+
+    /**
+     * Setzt den Wert und seine Haltbarkeit.
+     *
+     * @param value         Wert.
+     * @param timeToLive    Haltbarkeit in ms.
+     */
+    public final void set(final T value, final int timeToLive) {
+        final long sequence = lock();
+        write(value, timeToLive);
+        unlock(sequence);
+    }
+
+    /**
+     * Setzt den Wert und seine Haltbarkeit, aber nur wenn der aktuelle Wert noch der erwartete ist.
+     * Verglichen wird die Identität, unabhängig davon, ob der Wert noch gültig ist.
+     *
+     * @param expected      Erwarteter aktueller Wert.
+     * @param value         Neuer Wert.
+     * @param timeToLive    Haltbarkeit in ms.
+     * @return <code>true</code>, wenn der Wert gesetzt wurde, sonst <code>false</code>.
+     */
+    public final boolean compareAndSet(final T expected, final T value, final int timeToLive) {
+        final long sequence = lock();
+        try {
+            if (VALUE.getOpaque(this) != expected) {
+                return false;
+            }
+            write(value, timeToLive);
+            return true;
+        } finally {
+            unlock(sequence);
+        }
+    }
+
+    /**
+     * Prüft, ob der Wert noch gültig ist.
+     * @return <code>true</code> = gültig, sonst <code>false</code>.
+     */
+    public final boolean isValid() {
+        return System.currentTimeMillis() < (long) VALID_UNTIL.getAcquire(this);
+    }
+
+    /**
+     * Liefert den Wert, wenn er noch gültig ist.
+     * @return Der Wert, wenn er noch gültig ist, sonst <code>null</code>.
+     */
+    public final T get() {
+        return getOrElseStale(0);
+    }
+
+    /**
+     * Liefert den Wert, wenn er noch gültig ist oder höchstens seit der angegebenen Zeit abgelaufen ist.
+     *
+     * @param maxStaleness  Zeit in ms, die der Wert über seine Haltbarkeit hinaus noch geliefert wird.
+     * @return Der Wert oder <code>null</code>, wenn er zu lange abgelaufen ist.
+     */
+    @SuppressWarnings("unchecked")
+    public final T getOrElseStale(final long maxStaleness) {
+        while (true) {
+            final long before = (long) SEQUENCE.getAcquire(this);
+            final Object val = VALUE.getOpaque(this);
+            final long until = (long) VALID_UNTIL.getOpaque(this);
+            VarHandle.loadLoadFence();
+            if ((before & 1) == 0 && before == (long) SEQUENCE.getOpaque(this)) {
+                return System.currentTimeMillis() - until < maxStaleness ? (T) val : null;
+            }
+            Thread.onSpinWait();
+        }
+    }
+
+    private void write(final T value, final int timeToLive) {
+        VALUE.setOpaque(this, value);
+        VALID_UNTIL.setOpaque(this, System.currentTimeMillis() + timeToLive);
+    }
+
+    /**
+     * Macht die Sequenznummer ungerade und sperrt damit andere Schreiber aus.
+     */
+    private long lock() {
+        while (true) {
+            final long sequence = (long) SEQUENCE.getAcquire(this);
+            if ((sequence & 1) == 0 && SEQUENCE.compareAndSet(this, sequence, sequence + 1)) {
+                // Die folgenden Schreibzugriffe dürfen nicht vor die ungerade Nummer rutschen.
+                VarHandle.storeStoreFence();
+                return sequence + 1;
+            }
+            Thread.onSpinWait();
+        }
+    }
+
+    private void unlock(final long sequence) {
+        SEQUENCE.setRelease(this, sequence + 1);
+    }
+}
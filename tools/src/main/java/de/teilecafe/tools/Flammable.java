@@ -0,0 +1,14 @@
+package de.teilecafe.tools;
+
+/**
+ * Etwas, das vom {@link PhoenixValue.Fire} verbrannt werden kann.
+ *
+ * @author Bob Tehl
+ */
+public interface Flammable {
+
+    /**
+     * Verwirft den aktuellen Wert, so dass er beim nächsten Zugriff neu erzeugt wird.
+     */
+    void burn();
+}
@@ -1,5 +1,7 @@
 package de.teilecafe.tools;
 
+import java.util.concurrent.ThreadLocalRandom;
+
 /**
  * Definiert einen Wert, der nur die angegebene Zeit gültig ist und dann verfällt.
  *
@@ -18,6 +20,10 @@ public class FleetingValue<T> {
         set(value, timeToLive);
     }
 
+    public FleetingValue(final T value, final int timeToLive, final double jitter) {
+        set(value, timeToLive, jitter);
+    }
+
     /**
      * Setzt den Wert und seine Haltbarkeit.
      *
@@ -29,6 +35,21 @@ public class FleetingValue<T> {
         this.validUntil = System.currentTimeMillis() + timeToLive;
     }
 
+    /**
+     * Setzt den Wert und seine Haltbarkeit, die zufällig um bis zu <code>jitter * timeToLive</code>
+     * verkürzt wird. Viele gleichzeitig gesetzte Werte verfallen so nicht alle im selben Moment.
+     *
+     * @param value         Wert.
+     * @param timeToLive    Maximale Haltbarkeit in ms.
+     * @param jitter        Anteil der Haltbarkeit zwischen <code>0</code> und <code>1</code>,
+     *                      um den sie höchstens verkürzt wird.
+     */
+    public final void set(final T value, final int timeToLive, final double jitter) {
+        set(value, jitter > 0 && timeToLive > 0
+                ? timeToLive - (int) (timeToLive * Math.min(1, jitter) * ThreadLocalRandom.current().nextDouble())
+                : timeToLive);
+    }
+
     /**
      * Prüft, ob der Wert noch gültig ist.
      * @return <code>true</code> = gültig, sonst <code>false</code>.
@@ -44,4 +65,19 @@ public class FleetingValue<T> {
     public final T get() {
         return isValid() ? value : null;
     }
+
+    /**
+     * Liefert den Wert unabhängig davon, ob er noch gültig ist.
+     * @return Der zuletzt gesetzte Wert.
+     */
+    final T peek() {
+        return value;
+    }
+
+    /**
+     * @return Zeitpunkt in ms, bis zu dem der Wert gültig ist.
+     */
+    final long validUntil() {
+        return validUntil;
+    }
 }
@@ -0,0 +1,226 @@
+package de.teilecafe.tools;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Ermittelt die am häufigsten angefragten Schlüssel (Heavy Hitter) mit begrenztem Speicher.
+ *
+ * Umgesetzt ist der Space-Saving-Algorithmus mit einer "Stream-Summary": Es werden maximal
+ * <code>capacity</code> Zähler gehalten, jeder Zugriff kostet konstante Zeit. Wird ein unbekannter
+ * Schlüssel gezählt, während alle Zähler belegt sind, übernimmt er den kleinsten Zähler. Die
+ * Häufigkeiten sind daher Schätzungen, die höchstens um {@link HotKey#getError()} zu hoch liegen.
+ *
+ * @param <K> Typ des Schlüssels.
+ * @author Bob Tehl
+ */
+public class HotKeys<K> {
+    private final int capacity;
+    private final Map<K, Counter<K>> counters;
+    private Bucket<K> min;
+    private Bucket<K> max;
+
+    /**
+     * Konstruktor.
+     *
+     * @param capacity Maximale Anzahl der gleichzeitig gezählten Schlüssel.
+     */
+    public HotKeys(final int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Parameter capacity must be greater than 0.");
+        }
+        this.capacity = capacity;
+        this.counters = new HashMap<>(capacity * 2);
+    }
+
+    /**
+     * Zählt einen Zugriff auf den Schlüssel.
+     *
+     * @param key Schlüssel.
+     */
+    public synchronized void offer(final K key) {
+        Counter<K> counter = counters.get(key);
+        if (counter == null) {
+            if (counters.size() < capacity) {
+                counter = new Counter<>(key, 0);
+                attach(counter, bucketAfter(null, 0));
+            } else {
+                // Der Schlüssel mit der kleinsten Häufigkeit wird verdrängt und vererbt seinen Zähler.
+                counter = min.head;
+                counters.remove(counter.key);
+                counter.key = key;
+                counter.error = min.count;
+            }
+            counters.put(key, counter);
+        }
+        increment(counter);
+    }
+
+    /**
+     * Liefert die häufigsten Schlüssel absteigend nach ihrer geschätzten Häufigkeit.
+     *
+     * @param count Maximale Anzahl der gelieferten Schlüssel.
+     * @return Die häufigsten Schlüssel, nie <code>null</code>.
+     */
+    public synchronized List<HotKey<K>> top(final int count) {
+        if (count <= 0 || max == null) {
+            return Collections.emptyList();
+        }
+
+        final List<HotKey<K>> result = new ArrayList<>(Math.min(count, counters.size()));
+        for (Bucket<K> bucket = max; bucket != null && result.size() < count; bucket = bucket.prev) {
+            for (Counter<K> c = bucket.head; c != null && result.size() < count; c = c.next) {
+                result.add(new HotKey<>(c.key, bucket.count, c.error));
+            }
+        }
+        return Collections.unmodifiableList(result);
+    }
+
+    /**
+     * Vergisst alle bisher gezählten Zugriffe.
+     */
+    public synchronized void clear() {
+        counters.clear();
+        min = null;
+        max = null;
+    }
+
+    private void increment(final Counter<K> counter) {
+        final Bucket<K> bucket = counter.bucket;
+        final Bucket<K> target = bucketAfter(bucket, bucket.count + 1);
+        detach(counter);
+        attach(counter, target);
+    }
+
+    /**
+     * Liefert den Bucket mit der angegebenen Anzahl direkt hinter <code>bucket</code>
+     * (bzw. am Anfang der Liste) und legt ihn bei Bedarf an.
+     */
+    private Bucket<K> bucketAfter(final Bucket<K> bucket, final long count) {
+        final Bucket<K> next = bucket == null ? min : bucket.next;
+        if (next != null && next.count == count) {
+            return next;
+        }
+
+        final Bucket<K> created = new Bucket<>(count);
+        created.prev = bucket;
+        created.next = next;
+        if (bucket == null) {
+            min = created;
+        } else {
+            bucket.next = created;
+        }
+        if (next == null) {
+            max = created;
+        } else {
+            next.prev = created;
+        }
+        return created;
+    }
+
+    private void attach(final Counter<K> counter, final Bucket<K> bucket) {
+        counter.bucket = bucket;
+        counter.prev = null;
+        counter.next = bucket.head;
+        if (bucket.head != null) {
+            bucket.head.prev = counter;
+        }
+        bucket.head = counter;
+    }
+
+    private void detach(final Counter<K> counter) {
+        final Bucket<K> bucket = counter.bucket;
+        if (counter.prev == null) {
+            bucket.head = counter.next;
+        } else {
+            counter.prev.next = counter.next;
+        }
+        if (counter.next != null) {
+            counter.next.prev = counter.prev;
+        }
+
+        // Leere Buckets werden sofort ausgehängt.
+        if (bucket.head == null) {
+            if (bucket.prev == null) {
+                min = bucket.next;
+            } else {
+                bucket.prev.next = bucket.next;
+            }
+            if (bucket.next == null) {
+                max = bucket.prev;
+            } else {
+                bucket.next.prev = bucket.prev;
+            }
+        }
+    }
+
+    /**
+     * Ein häufig angefragter Schlüssel mit seiner geschätzten Häufigkeit.
+     *
+     * @param <K> Typ des Schlüssels.
+     */
+    public static final class HotKey<K> {
+        private final K key;
+        private final long count;
+        private final long error;
+
+        private HotKey(final K key, final long count, final long error) {
+            this.key = key;
+            this.count = count;
+            this.error = error;
+        }
+
+        /**
+         * @return Der Schlüssel.
+         */
+        public K getKey() {
+            return key;
+        }
+
+        /**
+         * @return Geschätzte Anzahl der Zugriffe, eventuell um bis zu {@link #getError()} zu hoch.
+         */
+        public long getCount() {
+            return count;
+        }
+
+        /**
+         * @return Maximale Überschätzung der Anzahl der Zugriffe.
+         */
+        public long getError() {
+            return error;
+        }
+
+        @Override
+        public String toString() {
+            return key + "=" + count + (error > 0 ? " (error " + error + ")" : "");
+        }
+    }
+
+    private static final class Counter<K> {
+        private K key;
+        private long error;
+        private Bucket<K> bucket;
+        private Counter<K> prev;
+        private Counter<K> next;
+
+        private Counter(final K key, final long error) {
+            this.key = key;
+            this.error = error;
+        }
+    }
+
+    private static final class Bucket<K> {
+        private final long count;
+        private Counter<K> head;
+        private Bucket<K> prev;
+        private Bucket<K> next;
+
+        private Bucket(final long count) {
+            this.count = count;
+        }
+    }
+}
@@ -4,29 +4,67 @@
  */
 package de.teilecafe.tools;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
-import java.util.HashMap;
 import java.util.Iterator;
-import java.util.Map;
+import java.util.List;
+import java.util.RandomAccess;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+import java.util.stream.Stream;
 
 /**
  * Stellt den Index eines Objektes in einem Array bzw. einer Collection zur Verfügung.
  * Es ist sowohl der erste Index, als auch der letzte Index verfügbar.
  *
+ * Intern wird eine einzige Hash-Tabelle mit offener Adressierung benutzt. Schlüssel, erster und
+ * letzter Index liegen in parallelen Arrays, es entstehen also weder Integer-Objekte noch Map-Einträge
+ * und Abfragen erzeugen keinen Müll.
+ *
+ * Verglichen wird normalerweise mit equals() und hashCode(). Über eine {@link Strategy} kann stattdessen
+ * die Identität oder eine eigene Hash-Funktion benutzt werden.
+ *
  * @author Bob Tehl
  */
 @SuppressWarnings("UnusedDeclaration")
 public class Indexer {
-    private final Map<Object, Integer> indexMap;
-    private final Map<Object, Integer> lastIndexMap;
+    /**
+     * Platzhalter für den Schlüssel <code>null</code>, da <code>null</code> in der Tabelle einen freien Platz markiert.
+     */
+    private static final Object NULL_KEY = new Object();
+
+    /**
+     * Ab dieser Anzahl Objekte lohnt sich beim parallelen Aufbau das Aufteilen.
+     */
+    private static final int PARALLEL_THRESHOLD = 1 << 16;
+
+    /**
+     * Größte Tabelle, die noch als Array angelegt werden kann.
+     */
+    private static final int MAX_CAPACITY = 1 << 30;
+
+    private final Strategy strategy;
+    private final Object[] keys;
+    private final int[] firstIndices;
+    private final int[] lastIndices;
+    private final int size;
 
     /**
      * Stellt den Index eines Objektes in einem Array zur Verfügung.
      * Es ist sowohl der erste Index, als auch der letzte Index verfügbar.
      */
     public Indexer(final Object[] objects) {
-        this(Arrays.asList(objects));
+        this(objects, Strategy.EQUALS);
+    }
+
+    /**
+     * Stellt den Index eines Objektes in einem Array zur Verfügung und vergleicht dabei mit der angegebenen Strategie.
+     * Es ist sowohl der erste Index, als auch der letzte Index verfügbar.
+     */
+    public Indexer(final Object[] objects, final Strategy strategy) {
+        this(Table.of(Arrays.asList(objects), 0, objects.length, strategy));
     }
 
     /**
@@ -34,32 +72,473 @@ public class Indexer {
      * Es ist sowohl der erste Index, als auch der letzte Index verfügbar.
      */
     public Indexer(final Collection collection) {
-        indexMap = new HashMap<Object, Integer>();
-        lastIndexMap = new HashMap<Object, Integer>();
+        this(collection, Strategy.EQUALS);
+    }
 
-        int i = 0;
-        for (Iterator iterator = collection.iterator(); iterator.hasNext(); i++) {
-            Object o = iterator.next();
-            if (!indexMap.containsKey(o)) {
-                indexMap.put(o, i);
-            }
-            lastIndexMap.put(o, i);
+    /**
+     * Stellt den Index eines Objektes in einer Collection zur Verfügung und vergleicht dabei mit der angegebenen
+     * Strategie. Es ist sowohl der erste Index, als auch der letzte Index verfügbar.
+     */
+    public Indexer(final Collection collection, final Strategy strategy) {
+        this(Table.of(collection.iterator(), collection.size(), strategy));
+    }
+
+    /**
+     * Stellt den Index eines Objektes aus einem Iterator zur Verfügung, ohne die Objekte vorher zu sammeln.
+     * Es ist sowohl der erste Index, als auch der letzte Index verfügbar.
+     */
+    public Indexer(final Iterator iterator) {
+        this(iterator, Strategy.EQUALS);
+    }
+
+    /**
+     * Stellt den Index eines Objektes aus einem Iterator zur Verfügung und vergleicht dabei mit der angegebenen
+     * Strategie. Es ist sowohl der erste Index, als auch der letzte Index verfügbar.
+     */
+    public Indexer(final Iterator iterator, final Strategy strategy) {
+        this(Table.of(iterator, 0, strategy));
+    }
+
+    /**
+     * Stellt den Index eines Objektes aus einem Stream zur Verfügung, ohne die Objekte vorher zu sammeln.
+     * Es ist sowohl der erste Index, als auch der letzte Index verfügbar.
+     */
+    public Indexer(final Stream<?> stream) {
+        this(stream.iterator());
+    }
+
+    /**
+     * Übernimmt die fertig aufgebaute Tabelle. Alle Felder werden genau einmal gesetzt, damit der Index
+     * auch ohne Synchronisation sicher an andere Threads weitergegeben werden kann.
+     */
+    private Indexer(final Table table) {
+        this.strategy = table.strategy;
+        this.keys = table.keys;
+        this.firstIndices = table.firstIndices;
+        this.lastIndices = table.lastIndices;
+        this.size = table.size;
+    }
+
+    /**
+     * Baut den Index eines Arrays parallel im {@link ForkJoinPool#commonPool()} auf.
+     * Das Ergebnis ist dasselbe wie bei {@link #Indexer(Object[])}.
+     */
+    public static Indexer parallel(final Object[] objects) {
+        return parallel(Arrays.asList(objects), Strategy.EQUALS);
+    }
+
+    /**
+     * Baut den Index eines Arrays mit der angegebenen Strategie parallel im {@link ForkJoinPool#commonPool()} auf.
+     * Das Ergebnis ist dasselbe wie bei {@link #Indexer(Object[], Strategy)}.
+     */
+    public static Indexer parallel(final Object[] objects, final Strategy strategy) {
+        return parallel(Arrays.asList(objects), strategy);
+    }
+
+    /**
+     * Baut den Index einer Liste parallel im {@link ForkJoinPool#commonPool()} auf.
+     * Das Ergebnis ist dasselbe wie bei {@link #Indexer(Collection)}. Kleine Listen, Listen ohne schnellen
+     * wahlfreien Zugriff und Rechner mit nur einem Kern werden sequentiell indiziert.
+     */
+    public static Indexer parallel(final List<?> list) {
+        return parallel(list, Strategy.EQUALS);
+    }
+
+    /**
+     * Baut den Index einer Liste mit der angegebenen Strategie parallel im {@link ForkJoinPool#commonPool()} auf.
+     * Das Ergebnis ist dasselbe wie bei {@link #Indexer(Collection, Strategy)}.
+     */
+    public static Indexer parallel(final List<?> list, final Strategy strategy) {
+        Objects.checkParam(strategy, "strategy");
+        final ForkJoinPool pool = ForkJoinPool.commonPool();
+        if (!(list instanceof RandomAccess) || list.size() < 2 * PARALLEL_THRESHOLD || pool.getParallelism() < 2) {
+            return new Indexer(list, strategy);
         }
+        return new Indexer(pool.invoke(new Build(list, strategy, pool.getParallelism())));
     }
 
     /**
      * Liefert den ersten Index des Objektes.
      */
     public int indexOf(final Object o) {
-        final Integer index = indexMap.get(o);
-        return index != null ? index : -1;
+        final int slot = find(o);
+        return slot >= 0 ? firstIndices[slot] : -1;
     }
 
     /**
      * Liefert den letzten Index des Objektes.
      */
     public int lastIndexOf(final Object o) {
-        final Integer index = lastIndexMap.get(o);
-        return index != null ? index : -1;
+        final int slot = find(o);
+        return slot >= 0 ? lastIndices[slot] : -1;
+    }
+
+    /**
+     * Liefert die Anzahl der unterschiedlichen Objekte.
+     */
+    public int size() {
+        return size;
+    }
+
+    private int find(final Object o) {
+        final Object key = o == null ? NULL_KEY : o;
+        final int mask = keys.length - 1;
+        for (int slot = hash(strategy, key) & mask; ; slot = slot + 1 & mask) {
+            final Object existing = keys[slot];
+            if (existing == null) {
+                return -1;
+            } else if (matches(strategy, existing, key)) {
+                return slot;
+            }
+        }
+    }
+
+    /**
+     * Vergleicht zwei Schlüssel. Bei {@link Strategy#IDENTITY} wird equals() gar nicht erst aufgerufen.
+     */
+    private static boolean matches(final Strategy strategy, final Object existing, final Object key) {
+        if (existing == key) {
+            return true;
+        } else if (strategy == Strategy.IDENTITY || existing == NULL_KEY || key == NULL_KEY) {
+            return false;
+        }
+        return strategy == Strategy.EQUALS ? existing.equals(key) : strategy.equal(existing, key);
+    }
+
+    /**
+     * Verteilt auch schlechte Hash-Werte gleichmäßig über die Tabelle.
+     */
+    private static int hash(final Strategy strategy, final Object key) {
+        final int h = (key == NULL_KEY ? 0 : strategy.hash(key)) * 0x9E3779B9;
+        return h ^ h >>> 16;
+    }
+
+    /**
+     * Legt fest, wann zwei Objekte als gleich gelten. Die Methoden werden nie mit <code>null</code> aufgerufen.
+     */
+    public interface Strategy {
+
+        /**
+         * Vergleicht mit equals() und hashCode().
+         */
+        Strategy EQUALS = new Strategy() {
+            @Override
+            public int hash(final Object o) {
+                return o.hashCode();
+            }
+
+            @Override
+            public boolean equal(final Object a, final Object b) {
+                return a.equals(b);
+            }
+        };
+
+        /**
+         * Vergleicht nur die Identität, wie {@link java.util.IdentityHashMap}.
+         */
+        Strategy IDENTITY = new Strategy() {
+            @Override
+            public int hash(final Object o) {
+                return System.identityHashCode(o);
+            }
+
+            @Override
+            public boolean equal(final Object a, final Object b) {
+                return a == b;
+            }
+        };
+
+        /**
+         * Liefert den Hash-Wert des Objektes. Gleiche Objekte müssen denselben Hash-Wert haben.
+         */
+        int hash(Object o);
+
+        /**
+         * Prüft, ob die beiden Objekte gleich sind.
+         */
+        boolean equal(Object a, Object b);
+    }
+
+    /**
+     * Tabelle im Aufbau. Erst die fertige Tabelle wird in einen {@link Indexer} übernommen.
+     */
+    private static final class Table {
+        private final Strategy strategy;
+        private Object[] keys;
+        private int[] firstIndices;
+        private int[] lastIndices;
+        private int size;
+
+        /**
+         * Legt die Tabelle so an, dass die angegebene Anzahl Schlüssel bei höchstens halber Füllung Platz hat.
+         */
+        private Table(final Strategy strategy, final int expected) {
+            Objects.checkParam(strategy, "strategy");
+            this.strategy = strategy;
+            final int capacity = capacity(expected);
+            keys = new Object[capacity];
+            firstIndices = new int[capacity];
+            lastIndices = new int[capacity];
+        }
+
+        /**
+         * Indiziert einen Ausschnitt der Liste, die Indizes beziehen sich auf die ganze Liste.
+         */
+        private static Table of(final List<?> list, final int from, final int to, final Strategy strategy) {
+            final Table table = new Table(strategy, to - from);
+            for (int i = from; i < to; i++) {
+                table.put(list.get(i), i);
+            }
+            return table;
+        }
+
+        private static Table of(final Iterator iterator, final int expected, final Strategy strategy) {
+            final Table table = new Table(strategy, expected);
+            for (int i = 0; iterator.hasNext(); i++) {
+                table.put(iterator.next(), i);
+            }
+            return table;
+        }
+
+        /**
+         * Kleinste Zweierpotenz, die mindestens doppelt so groß ist wie die erwartete Anzahl, höchstens
+         * aber {@link #MAX_CAPACITY}. Gerechnet wird mit long, damit große Anzahlen nicht überlaufen.
+         */
+        private static int capacity(final int expected) {
+            final long wanted = Math.max(4, expected) * 2L;
+            return wanted >= MAX_CAPACITY ? MAX_CAPACITY : Integer.highestOneBit((int) wanted - 1) << 1;
+        }
+
+        /**
+         * Vermerkt das Objekt am angegebenen Index.
+         */
+        private void put(final Object o, final int index) {
+            put(o == null ? NULL_KEY : o, index, index);
+        }
+
+        /**
+         * Vermerkt den Schlüssel mit erstem und letztem Index. Ist er schon bekannt, bleiben der kleinste
+         * erste und der größte letzte Index erhalten.
+         */
+        private void put(final Object key, final int first, final int last) {
+            final int mask = keys.length - 1;
+            for (int slot = hash(strategy, key) & mask; ; slot = slot + 1 & mask) {
+                final Object existing = keys[slot];
+                if (existing == null) {
+                    keys[slot] = key;
+                    firstIndices[slot] = first;
+                    lastIndices[slot] = last;
+                    if (++size > keys.length >> 1) {
+                        grow();
+                    }
+                    return;
+                } else if (matches(strategy, existing, key)) {
+                    firstIndices[slot] = Math.min(firstIndices[slot], first);
+                    lastIndices[slot] = Math.max(lastIndices[slot], last);
+                    return;
+                }
+            }
+        }
+
+        /**
+         * Verdoppelt die Tabelle. Ist die größte Tabelle erreicht, wird sie bis auf einen freien Platz
+         * gefüllt, der die Suche nach nicht vorhandenen Schlüsseln beendet.
+         */
+        private void grow() {
+            final Object[] oldKeys = keys;
+            if (oldKeys.length == MAX_CAPACITY) {
+                if (size == MAX_CAPACITY - 1) {
+                    throw new IllegalStateException("Too many distinct objects, at most "
+                            + (MAX_CAPACITY - 1) + " are supported.");
+                }
+                return;
+            }
+            final int[] oldFirst = firstIndices;
+            final int[] oldLast = lastIndices;
+
+            keys = new Object[oldKeys.length * 2];
+            firstIndices = new int[keys.length];
+            lastIndices = new int[keys.length];
+
+            final int mask = keys.length - 1;
+            for (int i = 0; i < oldKeys.length; i++) {
+                final Object key = oldKeys[i];
+                if (key != null) {
+                    int slot = hash(strategy, key) & mask;
+                    while (keys[slot] != null) {
+                        slot = slot + 1 & mask;
+                    }
+                    keys[slot] = key;
+                    firstIndices[slot] = oldFirst[i];
+                    lastIndices[slot] = oldLast[i];
+                }
+            }
+        }
+    }
+
+    /**
+     * Baut die Tabelle in zwei parallelen Schritten auf, ohne Teil-Tabellen zusammenzuführen.
+     *
+     * Zuerst werden die Stücke der Liste gehasht und ihre Indizes nach dem Bereich der Tabelle sortiert,
+     * in den sie fallen. Danach füllt je Bereich eine Aufgabe ihren Teil der gemeinsamen Tabelle, die
+     * Bereiche sind disjunkt. Nur Schlüssel, deren Sondierung über das Ende ihres Bereichs hinausläuft,
+     * werden am Schluss nacheinander eingetragen, bei halber Füllung sind das sehr wenige.
+     */
+    private static final class Build extends RecursiveTask<Table> {
+        private static final long serialVersionUID = 1L;
+
+        private final List<?> list;
+        private final Strategy strategy;
+        private final int parallelism;
+
+        private Build(final List<?> list, final Strategy strategy, final int parallelism) {
+            this.list = list;
+            this.strategy = strategy;
+            this.parallelism = parallelism;
+        }
+
+        @Override
+        protected Table compute() {
+            final int n = list.size();
+            final Table table = new Table(strategy, n);
+            final int mask = table.keys.length - 1;
+            final int partitionCount = Math.min(Integer.highestOneBit(parallelism) * 4, table.keys.length);
+            final int shift = Integer.numberOfTrailingZeros(table.keys.length / partitionCount);
+
+            final Chunk[] chunks = new Chunk[(n + PARALLEL_THRESHOLD - 1) / PARALLEL_THRESHOLD];
+            final List<ForkJoinTask<?>> tasks = new ArrayList<>(Math.max(chunks.length, partitionCount));
+            for (int c = 0; c < chunks.length; c++) {
+                final Chunk chunk = new Chunk(c * PARALLEL_THRESHOLD, Math.min(n, (c + 1) * PARALLEL_THRESHOLD));
+                chunks[c] = chunk;
+                tasks.add(ForkJoinTask.adapt(new Runnable() {
+                    @Override
+                    public void run() {
+                        chunk.sort(list, strategy, mask, shift, partitionCount);
+                    }
+                }));
+            }
+            ForkJoinTask.invokeAll(tasks);
+
+            final Partition[] partitions = new Partition[partitionCount];
+            tasks.clear();
+            for (int p = 0; p < partitionCount; p++) {
+                final Partition partition = new Partition(p, shift);
+                partitions[p] = partition;
+                tasks.add(ForkJoinTask.adapt(new Runnable() {
+                    @Override
+                    public void run() {
+                        partition.fill(table, chunks, list);
+                    }
+                }));
+            }
+            ForkJoinTask.invokeAll(tasks);
+
+            for (final Partition partition : partitions) {
+                table.size += partition.size;
+            }
+            for (final Partition partition : partitions) {
+                for (int i = 0; i < partition.deferredCount; i++) {
+                    table.put(list.get(partition.deferred[i]), partition.deferred[i]);
+                }
+            }
+            return table;
+        }
+    }
+
+    /**
+     * Ein Stück der Liste mit den Hash-Werten seiner Objekte und ihren Indizes, aufsteigend sortiert
+     * nach dem Bereich der Tabelle.
+     */
+    private static final class Chunk {
+        private final int from;
+        private final int to;
+        private final int[] hashes;
+        private final int[] order;
+        private int[] starts;
+
+        private Chunk(final int from, final int to) {
+            this.from = from;
+            this.to = to;
+            this.hashes = new int[to - from];
+            this.order = new int[to - from];
+        }
+
+        private void sort(final List<?> list, final Strategy strategy, final int mask, final int shift,
+                          final int partitionCount) {
+            final int[] counts = new int[partitionCount + 1];
+            for (int i = from; i < to; i++) {
+                final Object o = list.get(i);
+                final int h = hash(strategy, o == null ? NULL_KEY : o);
+                hashes[i - from] = h;
+                counts[((h & mask) >>> shift) + 1]++;
+            }
+            for (int p = 0; p < partitionCount; p++) {
+                counts[p + 1] += counts[p];
+            }
+            starts = counts.clone();
+            for (int i = from; i < to; i++) {
+                order[counts[(hashes[i - from] & mask) >>> shift]++] = i;
+            }
+        }
+    }
+
+    /**
+     * Ein Bereich der Tabelle, den genau eine Aufgabe füllt.
+     */
+    private static final class Partition {
+        private final int index;
+        private final int shift;
+        private int size;
+        private int[] deferred = new int[4];
+        private int deferredCount;
+
+        private Partition(final int index, final int shift) {
+            this.index = index;
+            this.shift = shift;
+        }
+
+        /**
+         * Trägt alle Objekte dieses Bereichs in aufsteigender Reihenfolge ein. Der erste Eintrag eines
+         * Schlüssels ist damit sein erster, der letzte sein letzter Index.
+         */
+        private void fill(final Table table, final Chunk[] chunks, final List<?> list) {
+            final Object[] keys = table.keys;
+            final int mask = keys.length - 1;
+            final int end = index + 1 << shift;
+            for (final Chunk chunk : chunks) {
+                for (int j = chunk.starts[index]; j < chunk.starts[index + 1]; j++) {
+                    final int i = chunk.order[j];
+                    final Object o = list.get(i);
+                    final Object key = o == null ? NULL_KEY : o;
+                    for (int slot = chunk.hashes[i - chunk.from] & mask; ; slot++) {
+                        if (slot == end) {
+                            defer(i);
+                            break;
+                        }
+                        final Object existing = keys[slot];
+                        if (existing == null) {
+                            keys[slot] = key;
+                            table.firstIndices[slot] = i;
+                            table.lastIndices[slot] = i;
+                            size++;
+                            break;
+                        } else if (matches(table.strategy, existing, key)) {
+                            table.lastIndices[slot] = i;
+                            break;
+                        }
+                    }
+                }
+            }
+        }
+
+        /**
+         * Merkt sich ein Objekt, dessen Sondierung den Bereich verlässt.
+         */
+        private void defer(final int i) {
+            if (deferredCount == deferred.length) {
+                deferred = Arrays.copyOf(deferred, deferredCount * 2);
+            }
+            deferred[deferredCount++] = i;
+        }
     }
 }
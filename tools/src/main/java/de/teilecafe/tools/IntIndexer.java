@@ -0,0 +1,67 @@
+package de.teilecafe.tools;
+
+/**
+ * Stellt den Index eines Wertes in einem <code>int[]</code> zur Verfügung, ohne die Werte einzupacken.
+ * Es ist sowohl der erste Index, als auch der letzte Index verfügbar.
+ *
+ * Wie beim {@link Indexer} liegen Schlüssel, erster und letzter Index in parallelen Arrays einer Hash-Tabelle
+ * mit offener Adressierung, siehe {@link PrimitiveTable}. Weder der Aufbau noch die Abfragen erzeugen Objekte
+ * pro Element. Nach dem Aufbau ist der Indexer unveränderlich und threadsicher.
+ *
+ * @author Bob Tehl
+ */
+public final class IntIndexer {
+    private final long[] keys;
+    private final int[] firstIndices;
+    private final int[] lastIndices;
+    private final int size;
+
+    private final int zeroFirst;
+    private final int zeroLast;
+
+    /**
+     * Stellt den Index eines Wertes in einem Array zur Verfügung.
+     * Es ist sowohl der erste Index, als auch der letzte Index verfügbar.
+     */
+    public IntIndexer(final int[] values) {
+        final PrimitiveTable table = new PrimitiveTable(values.length);
+        for (int i = 0; i < values.length; i++) {
+            table.put(values[i], i);
+        }
+        keys = table.keys;
+        firstIndices = table.firstIndices;
+        lastIndices = table.lastIndices;
+        size = table.size;
+        zeroFirst = table.zeroFirst;
+        zeroLast = table.zeroLast;
+    }
+
+    /**
+     * Liefert den ersten Index des Wertes.
+     */
+    public int indexOf(final int value) {
+        if (value == 0) {
+            return zeroFirst;
+        }
+        final int slot = PrimitiveTable.find(keys, value);
+        return slot >= 0 ? firstIndices[slot] : -1;
+    }
+
+    /**
+     * Liefert den letzten Index des Wertes.
+     */
+    public int lastIndexOf(final int value) {
+        if (value == 0) {
+            return zeroLast;
+        }
+        final int slot = PrimitiveTable.find(keys, value);
+        return slot >= 0 ? lastIndices[slot] : -1;
+    }
+
+    /**
+     * Liefert die Anzahl der unterschiedlichen Werte.
+     */
+    public int size() {
+        return zeroFirst >= 0 ? size + 1 : size;
+    }
+}
@@ -0,0 +1,440 @@
+package de.teilecafe.tools;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
+import java.util.Iterator;
+
+/**
+ * Index über Zeichenketten, der einmal in eine Datei geschrieben und danach nur noch eingeblendet wird.
+ * Beim Start fällt damit kein Aufbau an und der Index belegt praktisch keinen Heap.
+ *
+ * Aufbau der Datei:
+ * <ul>
+ *     <li>Kopf mit 32 Bytes: Kennung, Version, Anzahl der Plätze, Anzahl der Schlüssel und Dateilänge.</li>
+ *     <li>Hash-Tabelle mit offener Adressierung und 16 Bytes pro Platz: 24 Bit Hash-Kennung und 40 Bit
+ *     Position der Zeichenkette, danach erster und letzter Index. Die Kennung stammt aus den oberen Bits
+ *     eines 64-Bit-Hash-Wertes, der Platz aus den unteren, so dass sie auch bei großen Tabellen unabhängig
+ *     voneinander sind.</li>
+ *     <li>Zeichenketten, jeweils mit ihrer Länge in UTF-8 vorweg.</li>
+ * </ul>
+ *
+ * Die Datei wird in Stücken von 1 GB eingeblendet. Der Schreiber sorgt dafür, dass kein Eintrag über
+ * eine Stückgrenze reicht, so dass jeder Zugriff in genau einem Puffer liegt. Beim Suchen wird die
+ * Zeichenkette direkt in der Datei dekodiert und Zeichen für Zeichen verglichen, es entstehen also
+ * keine Objekte.
+ *
+ * @author Bob Tehl
+ */
+public final class MappedIndexer {
+    private static final int MAGIC = 0x54434958;
+    private static final int VERSION = 2;
+    private static final int HEADER_SIZE = 32;
+    private static final int SLOT_SIZE = 16;
+
+    private static final int CHUNK_BITS = 30;
+    private static final long CHUNK_SIZE = 1L << CHUNK_BITS;
+    private static final long POSITION_MASK = (1L << 40) - 1;
+
+    private final ByteBuffer[] chunks;
+    private final int slots;
+    private final int size;
+
+    private MappedIndexer(final ByteBuffer[] chunks, final int slots, final int size) {
+        this.chunks = chunks;
+        this.slots = slots;
+        this.size = size;
+    }
+
+    /**
+     * Blendet eine mit {@link #write(Iterator, Path)} geschriebene Datei nur lesend ein.
+     *
+     * @param file Datei.
+     * @return Der Index.
+     * @throws IOException Wenn die Datei nicht gelesen werden kann oder kein Index ist.
+     */
+    public static MappedIndexer open(final Path file) throws IOException {
+        Objects.checkParam(file, "file");
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            final long length = channel.size();
+            final ByteBuffer[] chunks = new ByteBuffer[(int) ((length + CHUNK_SIZE - 1) >>> CHUNK_BITS)];
+            for (int i = 0; i < chunks.length; i++) {
+                final long from = (long) i << CHUNK_BITS;
+                final MappedByteBuffer chunk = channel.map(FileChannel.MapMode.READ_ONLY, from, Math.min(CHUNK_SIZE, length - from));
+                chunks[i] = chunk;
+            }
+
+            if (length < HEADER_SIZE || chunks[0].getInt(0) != MAGIC) {
+                throw new IOException("File " + file + " is no index file.");
+            } else if (chunks[0].getInt(4) != VERSION) {
+                throw new IOException("File " + file + " has unsupported version " + chunks[0].getInt(4) + ".");
+            } else if (chunks[0].getLong(16) != length) {
+                throw new IOException("File " + file + " is truncated.");
+            }
+            return new MappedIndexer(chunks, chunks[0].getInt(8), chunks[0].getInt(12));
+        }
+    }
+
+    /**
+     * Schreibt den Index über die Zeichenketten in die Datei.
+     *
+     * @param keys Zeichenketten, nicht <code>null</code>.
+     * @param file Datei, sie wird überschrieben.
+     * @throws IOException Wenn die Datei nicht geschrieben werden kann.
+     */
+    public static void write(final Collection<? extends CharSequence> keys, final Path file) throws IOException {
+        Objects.checkParam(keys, "keys");
+        write(keys.iterator(), file);
+    }
+
+    /**
+     * Schreibt den Index über die Zeichenketten in die Datei. Die unterschiedlichen Zeichenketten werden
+     * dazu im Speicher gesammelt, die Quelle selbst wird nur einmal durchlaufen.
+     *
+     * Geschrieben wird zunächst in eine temporäre Datei im selben Verzeichnis, die erst vollständig auf die
+     * Platte gebracht und dann an die Stelle der Datei verschoben wird. Leser sehen so immer entweder den
+     * alten oder den neuen Index, nie einen halb geschriebenen.
+     *
+     * @param keys Zeichenketten, nicht <code>null</code>.
+     * @param file Datei, sie wird überschrieben.
+     * @throws IOException Wenn die Datei nicht geschrieben werden kann.
+     */
+    public static void write(final Iterator<? extends CharSequence> keys, final Path file) throws IOException {
+        Objects.checkParam(keys, "keys");
+        Objects.checkParam(file, "file");
+
+        final Table table = new Table();
+        for (int i = 0; keys.hasNext(); i++) {
+            final CharSequence key = keys.next();
+            if (key == null) {
+                throw new IllegalArgumentException("Parameter keys must not contain null.");
+            }
+            table.put(key.toString(), i);
+        }
+
+        // Positionen der Zeichenketten festlegen, kein Eintrag darf über eine Stückgrenze reichen.
+        final int slots = table.keys.length;
+        final long[] positions = new long[slots];
+        long position = HEADER_SIZE + (long) slots * SLOT_SIZE;
+        for (int slot = 0; slot < slots; slot++) {
+            final String key = table.keys[slot];
+            if (key != null) {
+                position = align(position, recordLength(key));
+                positions[slot] = position;
+                position += recordLength(key);
+            }
+        }
+        if (position > POSITION_MASK) {
+            throw new IOException("Index for " + file + " exceeds " + POSITION_MASK + " bytes.");
+        }
+        final long length = position;
+
+        final Path directory = file.toAbsolutePath().getParent();
+        final Path temp = Files.createTempFile(directory, file.getFileName().toString(), ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                write(table, positions, length, Channels.newOutputStream(channel));
+                channel.force(true);
+            }
+            try {
+                Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (final AtomicMoveNotSupportedException e) {
+                Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * Schreibt Kopf, Hash-Tabelle und Zeichenketten an den festgelegten Positionen.
+     */
+    private static void write(final Table table, final long[] positions, final long length,
+                              final OutputStream stream) throws IOException {
+        final int slots = table.keys.length;
+        final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stream, 1 << 16));
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeInt(slots);
+        out.writeInt(table.size);
+        out.writeLong(length);
+        out.writeLong(0);
+
+        for (int slot = 0; slot < slots; slot++) {
+            final String key = table.keys[slot];
+            if (key != null) {
+                out.writeLong((long) tag(hash(key)) << 40 | positions[slot]);
+                out.writeInt(table.firstIndices[slot]);
+                out.writeInt(table.lastIndices[slot]);
+            } else {
+                out.writeLong(0);
+                out.writeLong(0);
+            }
+        }
+
+        long written = HEADER_SIZE + (long) slots * SLOT_SIZE;
+        for (int slot = 0; slot < slots; slot++) {
+            final String key = table.keys[slot];
+            if (key != null) {
+                for (; written < positions[slot]; written++) {
+                    out.write(0);
+                }
+                for (int value = utf8Length(key); ; value >>>= 7) {
+                    if (value < 0x80) {
+                        out.write(value);
+                        break;
+                    }
+                    out.write(value & 0x7F | 0x80);
+                }
+                writeUtf8(out, key);
+                written += recordLength(key);
+            }
+        }
+        out.flush();
+    }
+
+    /**
+     * Liefert den ersten Index der Zeichenkette.
+     */
+    public int indexOf(final CharSequence key) {
+        final long slot = find(key);
+        return slot >= 0 ? getInt(slot + 8) : -1;
+    }
+
+    /**
+     * Liefert den letzten Index der Zeichenkette.
+     */
+    public int lastIndexOf(final CharSequence key) {
+        final long slot = find(key);
+        return slot >= 0 ? getInt(slot + 12) : -1;
+    }
+
+    /**
+     * Liefert die Anzahl der unterschiedlichen Zeichenketten.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Liefert die Dateiposition des Platzes mit der Zeichenkette oder -1.
+     */
+    private long find(final CharSequence key) {
+        if (key == null) {
+            return -1;
+        }
+
+        final long hash = hash(key);
+        final int tag = tag(hash);
+        final int mask = slots - 1;
+        for (int slot = (int) hash & mask; ; slot = slot + 1 & mask) {
+            final long at = HEADER_SIZE + (long) slot * SLOT_SIZE;
+            final long word = getLong(at);
+            if (word == 0) {
+                return -1;
+            } else if ((int) (word >>> 40) == tag && matches(word & POSITION_MASK, key)) {
+                return at;
+            }
+        }
+    }
+
+    /**
+     * Vergleicht die Zeichenkette an der Position mit dem Schlüssel, ohne sie zu dekodieren.
+     */
+    private boolean matches(final long position, final CharSequence key) {
+        final ByteBuffer chunk = chunks[(int) (position >>> CHUNK_BITS)];
+        int at = (int) (position & CHUNK_SIZE - 1);
+
+        int length = 0;
+        for (int shift = 0; ; shift += 7) {
+            final byte b = chunk.get(at++);
+            length |= (b & 0x7F) << shift;
+            if (b >= 0) {
+                break;
+            }
+        }
+
+        // Jedes Zeichen belegt mindestens ein und höchstens drei Bytes.
+        final int chars = key.length();
+        if (length < chars || length > 3 * chars) {
+            return false;
+        }
+
+        final int end = at + length;
+        int i = 0;
+        while (at < end) {
+            final int b = chunk.get(at++) & 0xFF;
+            final int codePoint;
+            if (b < 0x80) {
+                codePoint = b;
+            } else if (b < 0xE0) {
+                codePoint = (b & 0x1F) << 6 | chunk.get(at++) & 0x3F;
+            } else if (b < 0xF0) {
+                codePoint = (b & 0x0F) << 12 | (chunk.get(at++) & 0x3F) << 6 | chunk.get(at++) & 0x3F;
+            } else {
+                codePoint = (b & 0x07) << 18 | (chunk.get(at++) & 0x3F) << 12 | (chunk.get(at++) & 0x3F) << 6
+                        | chunk.get(at++) & 0x3F;
+            }
+
+            if (codePoint < Character.MIN_SUPPLEMENTARY_CODE_POINT) {
+                if (i >= chars || key.charAt(i++) != codePoint) {
+                    return false;
+                }
+            } else if (i + 1 >= chars || key.charAt(i++) != Character.highSurrogate(codePoint)
+                    || key.charAt(i++) != Character.lowSurrogate(codePoint)) {
+                return false;
+            }
+        }
+        return i == chars;
+    }
+
+    private long getLong(final long position) {
+        return chunks[(int) (position >>> CHUNK_BITS)].getLong((int) (position & CHUNK_SIZE - 1));
+    }
+
+    private int getInt(final long position) {
+        return chunks[(int) (position >>> CHUNK_BITS)].getInt((int) (position & CHUNK_SIZE - 1));
+    }
+
+    /**
+     * Schiebt den Eintrag an den Anfang des nächsten Stücks, wenn er sonst über die Grenze reichen würde.
+     */
+    private static long align(final long position, final int length) {
+        final long end = position + length - 1;
+        return end >>> CHUNK_BITS == position >>> CHUNK_BITS ? position : end >>> CHUNK_BITS << CHUNK_BITS;
+    }
+
+    private static int recordLength(final String key) {
+        final int bytes = utf8Length(key);
+        return (31 - Integer.numberOfLeadingZeros(bytes | 1)) / 7 + 1 + bytes;
+    }
+
+    private static int utf8Length(final String key) {
+        int length = 0;
+        for (int i = 0; i < key.length(); i++) {
+            final char c = key.charAt(i);
+            if (c < 0x80) {
+                length++;
+            } else if (c < 0x800) {
+                length += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < key.length() && Character.isLowSurrogate(key.charAt(i + 1))) {
+                length += 4;
+                i++;
+            } else {
+                length += 3;
+            }
+        }
+        return length;
+    }
+
+    /**
+     * Schreibt die Zeichenkette in UTF-8. Einzelne Surrogate werden wie andere Zeichen mit drei Bytes
+     * geschrieben, damit jede Zeichenkette unverändert wiedergefunden wird.
+     */
+    private static void writeUtf8(final DataOutputStream out, final String key) throws IOException {
+        for (int i = 0; i < key.length(); i++) {
+            final char c = key.charAt(i);
+            if (c < 0x80) {
+                out.write(c);
+            } else if (c < 0x800) {
+                out.write(0xC0 | c >>> 6);
+                out.write(0x80 | c & 0x3F);
+            } else if (Character.isHighSurrogate(c) && i + 1 < key.length() && Character.isLowSurrogate(key.charAt(i + 1))) {
+                final int codePoint = Character.toCodePoint(c, key.charAt(++i));
+                out.write(0xF0 | codePoint >>> 18);
+                out.write(0x80 | codePoint >>> 12 & 0x3F);
+                out.write(0x80 | codePoint >>> 6 & 0x3F);
+                out.write(0x80 | codePoint & 0x3F);
+            } else {
+                out.write(0xE0 | c >>> 12);
+                out.write(0x80 | c >>> 6 & 0x3F);
+                out.write(0x80 | c & 0x3F);
+            }
+        }
+    }
+
+    /**
+     * 64-Bit-Hash-Wert wie {@link String#hashCode()}, aber für jede {@link CharSequence} und gleichmäßig verteilt.
+     */
+    private static long hash(final CharSequence key) {
+        long h = 0;
+        for (int i = 0; i < key.length(); i++) {
+            h = 31 * h + key.charAt(i);
+        }
+        h *= 0x9E3779B97F4A7C15L;
+        return h ^ h >>> 32;
+    }
+
+    /**
+     * Kennung aus den oberen 24 Bit des Hash-Wertes. Der Platz wird aus höchstens den unteren 30 Bit
+     * bestimmt, die Kennung unterscheidet also auch Schlüssel, die auf denselben Platz fallen.
+     */
+    private static int tag(final long hash) {
+        return (int) (hash >>> 40);
+    }
+
+    /**
+     * Sammelt die unterschiedlichen Zeichenketten beim Schreiben.
+     */
+    private static final class Table {
+        private String[] keys = new String[16];
+        private int[] firstIndices = new int[16];
+        private int[] lastIndices = new int[16];
+        private int size;
+
+        private void put(final String key, final int index) {
+            final int mask = keys.length - 1;
+            for (int slot = (int) hash(key) & mask; ; slot = slot + 1 & mask) {
+                final String existing = keys[slot];
+                if (existing == null) {
+                    keys[slot] = key;
+                    firstIndices[slot] = index;
+                    lastIndices[slot] = index;
+                    if (++size * 2 > keys.length) {
+                        grow();
+                    }
+                    return;
+                } else if (existing.equals(key)) {
+                    lastIndices[slot] = index;
+                    return;
+                }
+            }
+        }
+
+        private void grow() {
+            final String[] oldKeys = keys;
+            final int[] oldFirst = firstIndices;
+            final int[] oldLast = lastIndices;
+
+            keys = new String[oldKeys.length * 2];
+            firstIndices = new int[keys.length];
+            lastIndices = new int[keys.length];
+
+            final int mask = keys.length - 1;
+            for (int i = 0; i < oldKeys.length; i++) {
+                final String key = oldKeys[i];
+                if (key != null) {
+                    int slot = (int) hash(key) & mask;
+                    while (keys[slot] != null) {
+                        slot = slot + 1 & mask;
+                    }
+                    keys[slot] = key;
+                    firstIndices[slot] = oldFirst[i];
+                    lastIndices[slot] = oldLast[i];
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,274 @@
+package de.teilecafe.tools;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.stream.Stream;
+
+/**
+ * Veränderbare Variante des {@link Indexer}. Die Objekte bilden eine Liste, an die angehängt und in der
+ * ersetzt und entfernt werden kann. Erster und letzter Index eines Objektes bleiben dabei immer aktuell,
+ * ohne dass der Index neu aufgebaut werden muss.
+ *
+ * Jedes Element belegt einen Platz, dessen Nummer sich nicht ändert. Welche Plätze belegt sind, hält ein
+ * Fenwick-Baum fest, aus dem sich die aktuelle Position eines Platzes in O(log n) ergibt. Pro Objekt werden
+ * die belegten Plätze sortiert gemerkt. Anhängen, Ersetzen und Entfernen kosten dadurch O(log n) zuzüglich
+ * der Anzahl gleicher Objekte, frei gewordene Plätze werden beim nächsten Wachsen eingesammelt.
+ *
+ * Die Klasse ist nicht threadsicher.
+ *
+ * @author Bob Tehl
+ */
+public class MutableIndexer {
+    /**
+     * Platzhalter für das Objekt <code>null</code>, da <code>null</code> einen freien Platz markiert.
+     */
+    private static final Object NULL_KEY = new Object();
+
+    private final Map<Object, Slots> slotsByKey = new HashMap<>();
+    private Object[] keys = new Object[16];
+    private int[] tree = new int[keys.length + 1];
+    private int used;
+    private int size;
+
+    public MutableIndexer() {
+        super();
+    }
+
+    /**
+     * Indiziert die Objekte des Iterators, ohne sie vorher zu sammeln.
+     */
+    public MutableIndexer(final Iterator iterator) {
+        while (iterator.hasNext()) {
+            append(iterator.next());
+        }
+    }
+
+    /**
+     * Indiziert die Objekte des Streams, ohne sie vorher zu sammeln.
+     */
+    public MutableIndexer(final Stream<?> stream) {
+        this(stream.iterator());
+    }
+
+    /**
+     * Hängt das Objekt an das Ende an.
+     *
+     * @param o Objekt.
+     * @return Index des Objektes.
+     */
+    public int append(final Object o) {
+        if (used == keys.length) {
+            reorganize();
+        }
+
+        final Object key = o == null ? NULL_KEY : o;
+        final int slot = used++;
+        keys[slot] = key;
+        add(slot, 1);
+        slots(key).insert(slot);
+        return size++;
+    }
+
+    /**
+     * Ersetzt das Objekt am angegebenen Index.
+     *
+     * @param index Index.
+     * @param o     Neues Objekt.
+     * @return Das bisherige Objekt.
+     */
+    public Object set(final int index, final Object o) {
+        final int slot = select(checkIndex(index));
+        final Object old = keys[slot];
+        final Object key = o == null ? NULL_KEY : o;
+        if (!old.equals(key)) {
+            release(old, slot);
+            slots(key).insert(slot);
+        }
+        keys[slot] = key;
+        return old == NULL_KEY ? null : old;
+    }
+
+    /**
+     * Entfernt das Objekt am angegebenen Index. Alle folgenden Objekte rücken um eins nach vorne.
+     *
+     * @param index Index.
+     * @return Das entfernte Objekt.
+     */
+    public Object removeAt(final int index) {
+        final int slot = select(checkIndex(index));
+        final Object old = keys[slot];
+        release(old, slot);
+        keys[slot] = null;
+        add(slot, -1);
+        size--;
+        return old == NULL_KEY ? null : old;
+    }
+
+    /**
+     * Liefert das Objekt am angegebenen Index.
+     */
+    public Object get(final int index) {
+        final Object key = keys[select(checkIndex(index))];
+        return key == NULL_KEY ? null : key;
+    }
+
+    /**
+     * Liefert den ersten Index des Objektes.
+     */
+    public int indexOf(final Object o) {
+        final Slots slots = slotsByKey.get(o == null ? NULL_KEY : o);
+        return slots != null ? rank(slots.slots[0]) : -1;
+    }
+
+    /**
+     * Liefert den letzten Index des Objektes.
+     */
+    public int lastIndexOf(final Object o) {
+        final Slots slots = slotsByKey.get(o == null ? NULL_KEY : o);
+        return slots != null ? rank(slots.slots[slots.size - 1]) : -1;
+    }
+
+    /**
+     * Liefert die Anzahl der Objekte.
+     */
+    public int size() {
+        return size;
+    }
+
+    private int checkIndex(final int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+        return index;
+    }
+
+    private Slots slots(final Object key) {
+        Slots slots = slotsByKey.get(key);
+        if (slots == null) {
+            slots = new Slots();
+            slotsByKey.put(key, slots);
+        }
+        return slots;
+    }
+
+    private void release(final Object key, final int slot) {
+        final Slots slots = slotsByKey.get(key);
+        slots.remove(slot);
+        if (slots.size == 0) {
+            slotsByKey.remove(key);
+        }
+    }
+
+    /**
+     * Schafft Platz für weitere Elemente. Ist mindestens die Hälfte der Plätze frei geworden, werden die
+     * belegten Plätze nach vorne geschoben, sonst wird verdoppelt. Beides kostet O(n), verteilt auf die
+     * vorangegangenen Aufrufe also konstante Zeit.
+     */
+    private void reorganize() {
+        final Object[] old = keys;
+        if (size * 2 > used) {
+            keys = new Object[old.length * 2];
+        }
+
+        for (final Slots slots : slotsByKey.values()) {
+            slots.size = 0;
+        }
+
+        int slot = 0;
+        for (int i = 0; i < used; i++) {
+            final Object key = old[i];
+            if (key != null) {
+                old[i] = null;
+                keys[slot] = key;
+                slotsByKey.get(key).insert(slot++);
+            }
+        }
+        used = slot;
+
+        // Fenwick-Baum in O(n) neu aufbauen.
+        tree = new int[keys.length + 1];
+        for (int i = 1; i < tree.length; i++) {
+            if (i <= used) {
+                tree[i]++;
+            }
+            final int parent = i + (i & -i);
+            if (parent < tree.length) {
+                tree[parent] += tree[i];
+            }
+        }
+    }
+
+    private void add(final int slot, final int delta) {
+        for (int i = slot + 1; i < tree.length; i += i & -i) {
+            tree[i] += delta;
+        }
+    }
+
+    /**
+     * Liefert die Position des Platzes, also die Anzahl der belegten Plätze davor.
+     */
+    private int rank(final int slot) {
+        int rank = 0;
+        for (int i = slot; i > 0; i -= i & -i) {
+            rank += tree[i];
+        }
+        return rank;
+    }
+
+    /**
+     * Liefert den Platz, der an der angegebenen Position steht.
+     */
+    private int select(final int index) {
+        int slot = 0;
+        int remaining = index;
+        for (int step = Integer.highestOneBit(tree.length - 1); step > 0; step >>= 1) {
+            final int next = slot + step;
+            if (next < tree.length && tree[next] <= remaining) {
+                slot = next;
+                remaining -= tree[next];
+            }
+        }
+        return slot;
+    }
+
+    /**
+     * Aufsteigend sortierte Plätze eines Objektes.
+     */
+    private static final class Slots {
+        private int[] slots = new int[1];
+        private int size;
+
+        private void insert(final int slot) {
+            if (size == slots.length) {
+                final int[] grown = new int[size * 2];
+                System.arraycopy(slots, 0, grown, 0, size);
+                slots = grown;
+            }
+
+            // Angehängt wird fast immer am Ende, daher von hinten suchen.
+            int i = size;
+            while (i > 0 && slots[i - 1] > slot) {
+                i--;
+            }
+            System.arraycopy(slots, i, slots, i + 1, size - i);
+            slots[i] = slot;
+            size++;
+        }
+
+        private void remove(final int slot) {
+            int low = 0;
+            int high = size - 1;
+            while (low < high) {
+                final int mid = (low + high) >>> 1;
+                if (slots[mid] < slot) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            System.arraycopy(slots, low + 1, slots, low, size - low - 1);
+            size--;
+        }
+    }
+}
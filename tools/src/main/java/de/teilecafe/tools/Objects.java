@@ -5,15 +5,27 @@
 package de.teilecafe.tools;
 
 import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Deque;
 import java.util.Enumeration;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.OptionalDouble;
+import java.util.OptionalInt;
+import java.util.OptionalLong;
 import java.util.Set;
 import java.util.function.Supplier;
 
@@ -293,6 +305,28 @@ public class Objects {
         return false;
     }
 
+    /**
+     * Berechnet einen strukturellen 64-Bit-Fingerabdruck eines Objektgraphen, z.B. als Prüfsumme
+     * für {@link Caching.Cache#get(Object, Object)}. Gleich aufgebaute Graphen liefern den gleichen
+     * Wert, ohne dass sie dafür serialisiert werden müssen.
+     * <p/>
+     * Berücksichtigt werden alle nicht statischen und nicht transienten Felder aus
+     * {@link Classes#getAllFields(Class)}. Die Felder einer Klasse werden dafür nur einmal ermittelt
+     * und zwischengespeichert. Strings, Wrapper, Enums und primitive Arrays werden direkt über ihren
+     * Inhalt erfasst, Optionals über ihren Wert, Sets und Maps unabhängig von ihrer Reihenfolge. Zyklen
+     * im Graphen werden erkannt. Objekte, die mehrere Elemente eines Sets oder einer Map gemeinsam
+     * benutzen, werden dafür je Element erneut erfasst. Bei Klassen, deren Felder nicht zugänglich sind,
+     * wird ersatzweise <code>hashCode()</code> benutzt, sofern die Klasse ihn überschreibt.
+     *
+     * @param object Wurzel des Objektgraphen, darf <code>null</code> sein.
+     * @return Der Fingerabdruck.
+     * @throws IllegalArgumentException Wenn der Graph ein Objekt enthält, dessen Felder nicht zugänglich
+     *                                  sind und dessen <code>hashCode()</code> nur die Identität abbildet.
+     */
+    public static long fingerprint(final Object object) {
+        return new Fingerprint().hash(object);
+    }
+
     /**
      * Liefert das erste Element einer Collection.
      */
@@ -634,6 +668,424 @@ public class Objects {
         }
     }
 
+    /**
+     * Berechnung des Fingerabdrucks für {@link #fingerprint(Object)}.
+     */
+    private static final class Fingerprint {
+        private static final long PRIME = 0x9E3779B97F4A7C15L;
+        private static final long NULL = 0x6A09E667F3BCC908L;
+        private static final long BACK_REFERENCE = 0xBB67AE8584CAA73BL;
+        private static final long ORDERED = 0x3C6EF372FE94F82BL;
+        private static final long UNORDERED = 0xA54FF53A5F1D36F1L;
+
+        private static final ClassValue<Plan> PLANS = new ClassValue<Plan>() {
+            @Override
+            protected Plan computeValue(final Class<?> type) {
+                return new Plan(type);
+            }
+        };
+
+        /**
+         * Platzhalter für <code>null</code> auf dem Stapel, {@link ArrayDeque} nimmt kein <code>null</code>.
+         */
+        private static final Object NULL_OBJECT = new Object();
+
+        private final Map<Object, Integer> visited = new IdentityHashMap<>();
+
+        /**
+         * Die besuchten Objekte in der Reihenfolge ihrer Nummern aus {@link #visited}.
+         */
+        private final List<Object> visitOrder = new ArrayList<>();
+
+        /**
+         * Noch zu besuchende Objekte und angefangene Container. Der Graph wird ohne Rekursion
+         * durchlaufen, damit auch sehr tiefe Graphen keinen StackOverflowError auslösen.
+         */
+        private final Deque<Object> stack = new ArrayDeque<>();
+        private long hash = 0x510E527FADE682D1L;
+
+        private long hash(final Object object) {
+            push(object);
+            while (!stack.isEmpty()) {
+                final Object next = stack.pop();
+                if (next instanceof Cursor) {
+                    ((Cursor) next).resume();
+                } else {
+                    walk(next == NULL_OBJECT ? null : next);
+                }
+            }
+            return mix(hash);
+        }
+
+        private void push(final Object object) {
+            stack.push(object == null ? NULL_OBJECT : object);
+        }
+
+        private void walk(final Object object) {
+            if (object == null) {
+                add(NULL);
+                return;
+            }
+
+            final Class<?> type = object.getClass();
+            final Plan plan = PLANS.get(type);
+
+            // Wie bei equals() spielt die konkrete Klasse von Collections und Maps keine Rolle.
+            if (!(object instanceof Collection || object instanceof Map || object instanceof Map.Entry)) {
+                add(plan.typeHash);
+            }
+
+            if (object instanceof String) {
+                addChars((String) object);
+            } else if (object instanceof Number || object instanceof Boolean || object instanceof Character) {
+                addBoxed(object);
+            } else if (object instanceof Enum) {
+                addChars(((Enum) object).name());
+            } else if (object instanceof Class) {
+                addChars(((Class) object).getName());
+            } else if (object instanceof Optional) {
+                push(((Optional<?>) object).orElse(null));
+            } else if (object instanceof OptionalInt) {
+                final OptionalInt optional = (OptionalInt) object;
+                add(optional.isPresent() ? 1 : 0);
+                add(optional.orElse(0));
+            } else if (object instanceof OptionalLong) {
+                final OptionalLong optional = (OptionalLong) object;
+                add(optional.isPresent() ? 1 : 0);
+                add(optional.orElse(0));
+            } else if (object instanceof OptionalDouble) {
+                final OptionalDouble optional = (OptionalDouble) object;
+                add(optional.isPresent() ? 1 : 0);
+                add(Double.doubleToLongBits(optional.orElse(0)));
+            } else {
+                // Zyklen und mehrfach referenzierte Objekte werden nur einmal durchlaufen.
+                final Integer seen = visited.get(object);
+                if (seen != null) {
+                    add(BACK_REFERENCE);
+                    add(seen);
+                    return;
+                }
+                visited.put(object, visitOrder.size());
+                visitOrder.add(object);
+
+                if (type.isArray()) {
+                    addArray(object);
+                } else if (object instanceof Set) {
+                    addUnordered((Set<?>) object);
+                } else if (object instanceof Map) {
+                    addUnordered(((Map<?, ?>) object).entrySet());
+                } else if (object instanceof Map.Entry) {
+                    // Umgekehrt auf den Stapel, damit der Schlüssel zuerst besucht wird.
+                    push(((Map.Entry) object).getValue());
+                    push(((Map.Entry) object).getKey());
+                } else if (object instanceof Collection) {
+                    add(ORDERED);
+                    add(((Collection) object).size());
+                    new Elements(((Collection<?>) object).iterator()).resume();
+                } else if (plan.fields == null) {
+                    if (plan.identityHash) {
+                        throw new IllegalArgumentException("Unable to fingerprint " + type.getName()
+                                + ", its fields are not accessible and hashCode() is not value based.");
+                    }
+                    add(object.hashCode());
+                } else {
+                    new Fields(object, plan).resume();
+                }
+            }
+        }
+
+        /**
+         * Elemente ungeordneter Container werden einzeln gehasht und kommutativ verknüpft.
+         */
+        private void addUnordered(final Collection<?> elements) {
+            new Unordered(elements.iterator(), elements.size(), hash).resume();
+        }
+
+        /**
+         * Ein angefangener Container auf dem Stapel. Bei jedem Aufruf von {@link #resume()} wird bis zum nächsten
+         * zu besuchenden Objekt weitergearbeitet. Davor wird der Container selbst wieder auf den Stapel gelegt,
+         * damit es nach dem Objekt mit ihm weitergeht.
+         */
+        private abstract class Cursor {
+            abstract void resume();
+        }
+
+        /**
+         * Elemente geordneter Container der Reihe nach.
+         */
+        private final class Elements extends Cursor {
+            private final Iterator<?> iterator;
+
+            private Elements(final Iterator<?> iterator) {
+                this.iterator = iterator;
+            }
+
+            @Override
+            void resume() {
+                if (iterator.hasNext()) {
+                    stack.push(this);
+                    push(iterator.next());
+                }
+            }
+        }
+
+        /**
+         * Elemente ungeordneter Container, jedes Element bekommt einen eigenen Hash, die Hashes werden summiert.
+         * Jedes Element wird so erfasst, als wäre es das erste. Die Objekte, die beim Erfassen eines Elements
+         * besucht wurden, werden danach wieder vergessen, sonst hinge die Nummerierung der Rückverweise von
+         * der Reihenfolge der Elemente ab.
+         */
+        private final class Unordered extends Cursor {
+            private final Iterator<?> iterator;
+            private final int size;
+            private final long outer;
+            private final int base;
+            private long sum;
+            private boolean started;
+
+            private Unordered(final Iterator<?> iterator, final int size, final long outer) {
+                this.iterator = iterator;
+                this.size = size;
+                this.outer = outer;
+                this.base = visitOrder.size();
+            }
+
+            @Override
+            void resume() {
+                if (started) {
+                    sum += mix(hash);
+                    while (visitOrder.size() > base) {
+                        visited.remove(visitOrder.remove(visitOrder.size() - 1));
+                    }
+                }
+                if (iterator.hasNext()) {
+                    started = true;
+                    hash = UNORDERED;
+                    stack.push(this);
+                    push(iterator.next());
+                } else {
+                    hash = outer;
+                    add(UNORDERED);
+                    add(size);
+                    add(sum);
+                }
+            }
+        }
+
+        /**
+         * Felder eines Objektes in der Reihenfolge des {@link Plan}s.
+         */
+        private final class Fields extends Cursor {
+            private final Object object;
+            private final Plan plan;
+            private int index;
+
+            private Fields(final Object object, final Plan plan) {
+                this.object = object;
+                this.plan = plan;
+            }
+
+            @Override
+            void resume() {
+                final Field[] fields = plan.fields;
+                try {
+                    while (index < fields.length) {
+                        final Field field = fields[index];
+                        switch (plan.kinds[index++]) {
+                            case 'Z': add(field.getBoolean(object) ? 1 : 0); break;
+                            case 'B': add(field.getByte(object)); break;
+                            case 'C': add(field.getChar(object)); break;
+                            case 'S': add(field.getShort(object)); break;
+                            case 'I': add(field.getInt(object)); break;
+                            case 'J': add(field.getLong(object)); break;
+                            case 'F': add(Float.floatToIntBits(field.getFloat(object))); break;
+                            case 'D': add(Double.doubleToLongBits(field.getDouble(object))); break;
+                            default:
+                                stack.push(this);
+                                push(field.get(object));
+                                return;
+                        }
+                    }
+                } catch (IllegalAccessException e) {
+                    throw new IllegalStateException("Unable to read fields of " + object.getClass().getName(), e);
+                }
+            }
+        }
+
+        private void addBoxed(final Object object) {
+            if (object instanceof Double) {
+                add(Double.doubleToLongBits((Double) object));
+            } else if (object instanceof Float) {
+                add(Float.floatToIntBits((Float) object));
+            } else if (object instanceof Long || object instanceof Integer
+                    || object instanceof Short || object instanceof Byte) {
+                add(((Number) object).longValue());
+            } else if (object instanceof Boolean) {
+                add((Boolean) object ? 1 : 0);
+            } else if (object instanceof Character) {
+                add((Character) object);
+            } else {
+                // BigDecimal, BigInteger und Co. werden über ihre Textdarstellung erfasst.
+                addChars(object.toString());
+            }
+        }
+
+        private void addChars(final String string) {
+            final int length = string.length();
+            add(length);
+            int i = 0;
+            for (; i + 4 <= length; i += 4) {
+                add((long) string.charAt(i) | (long) string.charAt(i + 1) << 16
+                        | (long) string.charAt(i + 2) << 32 | (long) string.charAt(i + 3) << 48);
+            }
+            long rest = 0;
+            for (; i < length; i++) {
+                rest = rest << 16 | string.charAt(i);
+            }
+            add(rest);
+        }
+
+        private void addArray(final Object array) {
+            if (array instanceof Object[]) {
+                final Object[] objects = (Object[]) array;
+                add(objects.length);
+                new Elements(Arrays.asList(objects).iterator()).resume();
+            } else if (array instanceof byte[]) {
+                final byte[] bytes = (byte[]) array;
+                add(bytes.length);
+                final ByteBuffer buffer = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+                while (buffer.remaining() >= 8) {
+                    add(buffer.getLong());
+                }
+                long rest = 0;
+                while (buffer.hasRemaining()) {
+                    rest = rest << 8 | buffer.get() & 0xFF;
+                }
+                add(rest);
+            } else if (array instanceof int[]) {
+                final int[] ints = (int[]) array;
+                add(ints.length);
+                for (final int value : ints) {
+                    add(value);
+                }
+            } else if (array instanceof long[]) {
+                final long[] longs = (long[]) array;
+                add(longs.length);
+                for (final long value : longs) {
+                    add(value);
+                }
+            } else if (array instanceof char[]) {
+                addChars(new String((char[]) array));
+            } else if (array instanceof double[]) {
+                final double[] doubles = (double[]) array;
+                add(doubles.length);
+                for (final double value : doubles) {
+                    add(Double.doubleToLongBits(value));
+                }
+            } else if (array instanceof float[]) {
+                final float[] floats = (float[]) array;
+                add(floats.length);
+                for (final float value : floats) {
+                    add(Float.floatToIntBits(value));
+                }
+            } else if (array instanceof short[]) {
+                final short[] shorts = (short[]) array;
+                add(shorts.length);
+                for (final short value : shorts) {
+                    add(value);
+                }
+            } else {
+                final boolean[] booleans = (boolean[]) array;
+                add(booleans.length);
+                for (final boolean value : booleans) {
+                    add(value ? 1 : 0);
+                }
+            }
+        }
+
+        private void add(final long value) {
+            hash = Long.rotateLeft(hash ^ value * PRIME, 31) * PRIME;
+        }
+
+        /**
+         * Finalisierung aus MurmurHash3 (fmix64).
+         */
+        private static long mix(long value) {
+            value ^= value >>> 33;
+            value *= 0xFF51AFD7ED558CCDL;
+            value ^= value >>> 33;
+            value *= 0xC4CEB9FE1A85EC53L;
+            value ^= value >>> 33;
+            return value;
+        }
+
+        /**
+         * Vorab ermittelte, zugängliche Felder einer Klasse.
+         */
+        private static final class Plan {
+            private final long typeHash;
+            private final Field[] fields;
+            private final char[] kinds;
+
+            /**
+             * Felder nicht zugänglich und <code>hashCode()</code> nur von Object geerbt.
+             */
+            private final boolean identityHash;
+
+            private Plan(final Class<?> type) {
+                final Fingerprint typeName = new Fingerprint();
+                typeName.addChars(type.getName());
+                typeHash = mix(typeName.hash);
+
+                final List<Field> accessible = new ArrayList<Field>();
+                boolean opaque = false;
+                if (!type.isArray() && !type.isPrimitive()) {
+                    for (final Field field : Classes.getAllFields(type)) {
+                        final int modifiers = field.getModifiers();
+                        if (Modifier.isStatic(modifiers) || Modifier.isTransient(modifiers)) {
+                            continue;
+                        }
+                        try {
+                            field.setAccessible(true);
+                            accessible.add(field);
+                        } catch (RuntimeException e) {
+                            // Felder aus gesperrten Modulen sind nicht lesbar, dann bleibt nur hashCode().
+                            opaque = true;
+                            break;
+                        }
+                    }
+                }
+
+                fields = opaque ? null : accessible.toArray(new Field[accessible.size()]);
+                identityHash = opaque && inheritsIdentityHash(type);
+                kinds = new char[opaque ? 0 : fields.length];
+                for (int i = 0; i < kinds.length; i++) {
+                    final Class<?> fieldType = fields[i].getType();
+                    kinds[i] = fieldType.isPrimitive() ? kind(fieldType) : 'L';
+                }
+            }
+
+            private static boolean inheritsIdentityHash(final Class<?> type) {
+                try {
+                    return type.getMethod("hashCode").getDeclaringClass() == Object.class;
+                } catch (NoSuchMethodException e) {
+                    return true;
+                }
+            }
+
+            private static char kind(final Class<?> primitive) {
+                if (primitive == boolean.class) return 'Z';
+                if (primitive == byte.class) return 'B';
+                if (primitive == char.class) return 'C';
+                if (primitive == short.class) return 'S';
+                if (primitive == int.class) return 'I';
+                if (primitive == long.class) return 'J';
+                if (primitive == float.class) return 'F';
+                return 'D';
+            }
+        }
+    }
+
     /**
      * Übergabeinterface der Filterfunktion für <code>grep()</code>
      */
@@ -0,0 +1,29 @@
+package de.teilecafe.tools;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/**
+ * JFR-Ereignis für eine Neuerzeugung eines {@link PhoenixValue}. Aufgezeichnet werden per Vorgabe
+ * nur Neuerzeugungen ab 100 ms, die Schwelle lässt sich über die JFR-Einstellungen ändern.
+ *
+ * @author Bob Tehl
+ */
+@Name("de.teilecafe.tools.PhoenixRebirth")
+@Label("PhoenixValue Rebirth")
+@Description("Recreation of an expired or burnt PhoenixValue")
+@Category({"teilecafe", "PhoenixValue"})
+@Threshold("100 ms")
+@StackTrace(false)
+final class PhoenixRebirthEvent extends Event {
+    @Label("Name")
+    String name;
+
+    @Label("Failed")
+    boolean failed;
+}
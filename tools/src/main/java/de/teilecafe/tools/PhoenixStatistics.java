@@ -0,0 +1,158 @@
+package de.teilecafe.tools;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Zähler und Laufzeiten eines benannten {@link PhoenixValue}, siehe {@link PhoenixValue#named(String)}.
+ *
+ * Die Dauer der Neuerzeugungen wird in einem Histogramm mit Zweierpotenzen von Nanosekunden als
+ * Klassengrenzen erfasst. Alle Zähler sind auf gleichzeitige Zugriffe ausgelegt und kosten pro
+ * Zugriff nur ein Inkrement.
+ *
+ * @author Bob Tehl
+ */
+public final class PhoenixStatistics {
+    private static final int BUCKETS = 64;
+
+    private final String name;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder staleHits = new LongAdder();
+    private final LongAdder rebirths = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private final LongAdder burns = new LongAdder();
+    private final LongAdder rebirthNanos = new LongAdder();
+    private final LongAccumulator maxRebirthNanos = new LongAccumulator(Math::max, 0);
+    private final AtomicLongArray histogram = new AtomicLongArray(BUCKETS);
+
+    PhoenixStatistics(final String name) {
+        this.name = name;
+    }
+
+    void hit() {
+        hits.increment();
+    }
+
+    void staleHit() {
+        staleHits.increment();
+    }
+
+    void burn() {
+        burns.increment();
+    }
+
+    void rebirth(final long nanos, final boolean failed) {
+        rebirths.increment();
+        if (failed) {
+            failures.increment();
+        }
+        rebirthNanos.add(nanos);
+        maxRebirthNanos.accumulate(nanos);
+        histogram.incrementAndGet(BUCKETS - 1 - Long.numberOfLeadingZeros(Math.max(1, nanos)));
+    }
+
+    /**
+     * @return Name des Wertes.
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return Anzahl der Zugriffe, die mit einem gültigen Wert beantwortet wurden.
+     */
+    public long getHits() {
+        return hits.sum();
+    }
+
+    /**
+     * @return Anzahl der Zugriffe, die während einer Neuerzeugung den abgelaufenen Wert bekamen.
+     */
+    public long getStaleHits() {
+        return staleHits.sum();
+    }
+
+    /**
+     * @return Anzahl der Neuerzeugungen, einschließlich der fehlgeschlagenen.
+     */
+    public long getRebirths() {
+        return rebirths.sum();
+    }
+
+    /**
+     * @return Anzahl der fehlgeschlagenen Neuerzeugungen.
+     */
+    public long getRebirthFailures() {
+        return failures.sum();
+    }
+
+    /**
+     * @return Anzahl, wie oft der Wert verbrannt wurde.
+     */
+    public long getBurns() {
+        return burns.sum();
+    }
+
+    /**
+     * @return Durchschnittliche Dauer einer Neuerzeugung in Nanosekunden.
+     */
+    public long getAverageRebirthNanos() {
+        final long count = rebirths.sum();
+        return count == 0 ? 0 : rebirthNanos.sum() / count;
+    }
+
+    /**
+     * @return Längste Dauer einer Neuerzeugung in Nanosekunden.
+     */
+    public long getMaxRebirthNanos() {
+        return maxRebirthNanos.get();
+    }
+
+    /**
+     * Liefert eine obere Schranke für das angegebene Quantil der Dauer der Neuerzeugungen.
+     * Die Genauigkeit entspricht der Klassenbreite des Histogramms, also einem Faktor von höchstens 2.
+     *
+     * @param quantile Quantil zwischen <code>0</code> und <code>1</code>, z.B. <code>0.99</code>.
+     * @return Dauer in Nanosekunden.
+     */
+    public long getRebirthNanosQuantile(final double quantile) {
+        final long[] counts = getRebirthHistogram();
+        long total = 0;
+        for (final long count : counts) {
+            total += count;
+        }
+
+        final long rank = (long) Math.ceil(total * Math.min(1, Math.max(0, quantile)));
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank && seen > 0) {
+                return i >= 62 ? Long.MAX_VALUE : (2L << i) - 1;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Liefert das Histogramm der Dauer der Neuerzeugungen. Eintrag <code>i</code> zählt die
+     * Neuerzeugungen, die zwischen <code>2^i</code> und <code>2^(i+1)-1</code> Nanosekunden dauerten.
+     *
+     * @return Kopie des Histogramms.
+     */
+    public long[] getRebirthHistogram() {
+        final long[] counts = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] = histogram.get(i);
+        }
+        return counts;
+    }
+
+    @Override
+    public String toString() {
+        return name + ": hits=" + getHits() + ", staleHits=" + getStaleHits() + ", rebirths=" + getRebirths()
+                + ", failures=" + getRebirthFailures() + ", burns=" + getBurns()
+                + ", avgRebirthMs=" + getAverageRebirthNanos() / 1000000.0
+                + ", p99RebirthMs<=" + getRebirthNanosQuantile(0.99) / 1000000.0;
+    }
+}
@@ -1,11 +1,31 @@
 package de.teilecafe.tools;
 
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
 import java.lang.ref.WeakReference;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Deque;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
 import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
 
 /**
  * Definiert einen Wert, der Lazy erzeugt wird, nach einer Zeit wieder verfällt,
@@ -13,10 +33,103 @@ import java.util.Set;
  *
  * @author Bob Tehl
  */
-public final class PhoenixValue<T> {
-    private final FleetingValue<T> value;
+public final class PhoenixValue<T> implements Flammable {
     private final int timeToLive;
     private final Ash<T> ash;
+    private final ReentrantLock rebirthLock = new ReentrantLock();
+    private final Fire.PhoenixRef fireRef;
+
+    /**
+     * Aktueller Wert. Eine einmal veröffentlichte Instanz wird nicht mehr verändert,
+     * sondern immer komplett ersetzt.
+     */
+    private volatile FleetingValue<T> value;
+
+    /**
+     * Wird bei jedem {@link #burn()} erhöht, damit eine gleichzeitig laufende Neuerzeugung
+     * ihren dann veralteten Wert nicht mehr veröffentlicht.
+     */
+    private final AtomicInteger burnCount = new AtomicInteger();
+
+    /**
+     * Lebenszeit eines <code>null</code>-Ergebnisses, <code>0</code> = nicht zwischenspeichern.
+     */
+    private volatile int nullTimeToLive;
+
+    /**
+     * Anteil der Lebenszeit, um den der Wert vor Ablauf im Hintergrund erneuert wird,
+     * <code>0</code> = keine Erneuerung im Hintergrund.
+     */
+    private volatile double refreshAhead;
+
+    /**
+     * Geplante Erneuerung. Planen und Verwerfen nur unter {@link #refreshLock}.
+     */
+    private final Object refreshLock = new Object();
+    private ScheduledFuture<?> refreshTask;
+
+    /**
+     * Wird bei jedem Planen und Verwerfen erhöht. Eine Erneuerung läuft nur, wenn sie noch die zuletzt
+     * geplante ist.
+     */
+    private long refreshGeneration;
+
+    /**
+     * Wurde der Wert seit der letzten Erneuerung im Hintergrund gelesen?
+     */
+    private volatile boolean accessed;
+    private int failures;
+
+    /**
+     * Wie lange nach Ablauf der letzte Wert noch geliefert wird, wenn die Neuerzeugung fehlschlägt,
+     * <code>0</code> = Fehler werden immer weitergereicht.
+     */
+    private volatile int staleWindow;
+
+    /**
+     * Nach einem Fehler wird frühestens zu diesem Zeitpunkt ein neuer Versuch gestartet.
+     */
+    private volatile long retryAt;
+
+    /**
+     * Der letzte Fehler der Neuerzeugung, Ursache der bis {@link #retryAt} geworfenen Fehler.
+     */
+    private volatile RuntimeException lastFailure;
+
+    /**
+     * Anteil der Lebenszeit, um den sie zufällig verkürzt wird.
+     */
+    private volatile double jitter;
+
+    /**
+     * Gewichtung der vorzeitigen Neuerzeugung (XFetch), <code>0</code> = keine vorzeitige Neuerzeugung.
+     */
+    private volatile double earlyExpiry;
+
+    /**
+     * Dauer der letzten Neuerzeugung in Nanosekunden.
+     */
+    private volatile long rebirthCost;
+
+    /**
+     * Zähler und Laufzeiten, nur bei benannten Werten.
+     */
+    private volatile PhoenixStatistics statistics;
+
+    /**
+     * Werte, die bei der letzten Erzeugung gelesen wurden. Nur unter {@link #rebirthLock} benutzt.
+     */
+    private final Set<PhoenixValue<?>> sources = new HashSet<>();
+
+    /**
+     * Werte, die bei ihrer Erzeugung diesen Wert gelesen haben und mit ihm verbrannt werden.
+     */
+    private final Map<PhoenixValue<?>, Boolean> dependents = Collections.synchronizedMap(new WeakHashMap<>());
+
+    /**
+     * Der Wert, der im aktuellen Thread gerade neu erzeugt wird.
+     */
+    private static final ThreadLocal<PhoenixValue<?>> REBIRTHING = new ThreadLocal<>();
 
     public static final Fire FIRE = new Fire();
 
@@ -32,7 +145,7 @@ public final class PhoenixValue<T> {
         this.timeToLive = timeToLive;
         this.ash = ash;
 
-        FIRE.add(this);
+        this.fireRef = FIRE.register(this);
     }
 
     public PhoenixValue(final Ash<T> ash) {
@@ -42,18 +155,518 @@ public final class PhoenixValue<T> {
     /**
      * Liefert den Wert zurück, wenn er noch gültig ist,
      * andernfalls wird ein neuer Wert abgerufen und dieser zurückgegeben.
+     *
+     * Solange der Wert gültig ist, kommt der Zugriff ohne Sperre aus. Ist er verfallen, erzeugt
+     * genau ein Thread den Wert neu. Die übrigen bekommen solange den abgelaufenen Wert oder
+     * warten, wenn es keinen gibt.
+     *
+     * Wird der Wert während der Erzeugung eines anderen PhoenixValues gelesen, merkt sich dieser
+     * die Abhängigkeit und wird zukünftig mit diesem Wert zusammen verbrannt.
+     *
+     * Mit {@link #staleOnError(int)} wird die Quelle nach einem Fehler erst nach einem wachsenden Abstand
+     * wieder gefragt.
      */
     public final T get() {
-        T val = value.get();
-        if (val == null) {
-            val = ash.rebirth();
-            value.set(val, timeToLive);
+        final PhoenixValue<?> dependent = REBIRTHING.get();
+        if (dependent != null && dependent != this) {
+            dependent.dependsOn(this);
+        }
+
+        if (!accessed) {
+            accessed = true;
+        }
+
+        final FleetingValue<T> current = value;
+        if (current.isValid()) {
+            if (earlyExpiry > 0 && expiresEarly(current)) {
+                return rebirthEarly(current);
+            }
+            return hit(current.peek());
+        }
+        return rebirth(current);
+    }
+
+    private T hit(final T val) {
+        final PhoenixStatistics stats = statistics;
+        if (stats != null) {
+            stats.hit();
         }
         return val;
     }
 
+    /**
+     * Wie {@link #get()}, macht aber ein zwischengespeichertes <code>null</code>-Ergebnis explizit.
+     *
+     * @return Der Wert oder ein leeres Optional, wenn {@link Ash#rebirth()} <code>null</code> lieferte.
+     */
+    public final Optional<T> getOptional() {
+        return Optional.ofNullable(get());
+    }
+
+    /**
+     * Verbrennt den Wert und alle Werte, die direkt oder indirekt aus ihm erzeugt wurden.
+     * Diese werden erst beim nächsten Zugriff neu erzeugt, wobei sie ihre Quellen zuerst anfordern.
+     */
+    @Override
     public final void burn() {
-        value.set(null, timeToLive);
+        final Map<PhoenixValue<?>, Boolean> burnt = new IdentityHashMap<>();
+        final Deque<PhoenixValue<?>> pending = new ArrayDeque<>();
+        pending.add(this);
+
+        while (!pending.isEmpty()) {
+            final PhoenixValue<?> phoenixValue = pending.poll();
+            if (burnt.put(phoenixValue, Boolean.TRUE) == null) {
+                phoenixValue.burnSelf();
+                synchronized (phoenixValue.dependents) {
+                    pending.addAll(phoenixValue.dependents.keySet());
+                }
+            }
+        }
+    }
+
+    private void burnSelf() {
+        final PhoenixStatistics stats = statistics;
+        if (stats != null) {
+            stats.burn();
+        }
+        burnCount.incrementAndGet();
+        value = new FleetingValue<>();
+        retryAt = 0;
+        cancelRefresh();
+    }
+
+    /**
+     * Merkt sich, dass dieser Wert bei seiner Erzeugung die angegebene Quelle gelesen hat.
+     */
+    private void dependsOn(final PhoenixValue<?> source) {
+        if (sources.add(source)) {
+            source.dependents.put(this, Boolean.TRUE);
+        }
+    }
+
+    /**
+     * Benennt den Wert und schaltet damit die Statistik ein, siehe {@link #getStatistics()}.
+     * Der Name erscheint auch in den JFR-Ereignissen zu langsamen Neuerzeugungen.
+     *
+     * Sollte direkt nach dem Konstruktor aufgerufen werden.
+     *
+     * @param name Name des Wertes.
+     * @return Diese Instanz.
+     */
+    public final PhoenixValue<T> named(final String name) {
+        Objects.checkParam(name, "name");
+        this.statistics = new PhoenixStatistics(name);
+        return this;
+    }
+
+    /**
+     * @return Zähler und Laufzeiten des Wertes oder <code>null</code>, wenn er nicht benannt wurde.
+     */
+    public final PhoenixStatistics getStatistics() {
+        return statistics;
+    }
+
+    /**
+     * Legt fest, wie lange ein <code>null</code>-Ergebnis von {@link Ash#rebirth()} gültig bleibt.
+     * Ohne diese Angabe wird <code>null</code> nicht zwischengespeichert und bei jedem Zugriff
+     * erneut erzeugt.
+     *
+     * Sollte direkt nach dem Konstruktor aufgerufen werden.
+     *
+     * @param nullTimeToLive Lebenszeit eines <code>null</code>-Ergebnisses in Millisekunden.
+     * @return Diese Instanz.
+     */
+    public final PhoenixValue<T> nullTimeToLive(final int nullTimeToLive) {
+        this.nullTimeToLive = Math.max(0, nullTimeToLive);
+        return this;
+    }
+
+    /**
+     * Schaltet die Auslieferung des alten Wertes bei Fehlern ein. Schlägt {@link Ash#rebirth()} fehl,
+     * liefert {@link #get()} den letzten Wert weiter, solange er nicht länger als das angegebene
+     * Zeitfenster abgelaufen ist. Neue Versuche startet jeweils nur ein Aufrufer, und zwar mit
+     * exponentiell wachsendem, zufällig gestreutem Abstand. Dazwischen bekommen alle den alten Wert.
+     * Gibt es keinen alten Wert mehr, wird der Fehler weitergereicht. Bis zum nächsten Versuch bekommt
+     * dann jeder Aufrufer eine eigene {@link IllegalStateException} mit dem letzten Fehler als Ursache.
+     *
+     * Sollte direkt nach dem Konstruktor aufgerufen werden.
+     *
+     * @param staleWindow Zeit in Millisekunden nach dem Ablauf, in der der alte Wert geliefert werden darf.
+     * @return Diese Instanz.
+     */
+    public final PhoenixValue<T> staleOnError(final int staleWindow) {
+        this.staleWindow = Math.max(0, staleWindow);
+        return this;
+    }
+
+    /**
+     * Verkürzt die Lebenszeit jedes neu erzeugten Wertes zufällig um bis zu diesen Anteil. Werte, die
+     * gleichzeitig erzeugt wurden, verfallen so nicht alle im selben Moment.
+     *
+     * Sollte direkt nach dem Konstruktor aufgerufen werden.
+     *
+     * @param jitter Anteil der Lebenszeit zwischen <code>0</code> und <code>1</code>.
+     * @return Diese Instanz.
+     */
+    public final PhoenixValue<T> jitter(final double jitter) {
+        if (jitter < 0 || jitter > 1) {
+            throw new IllegalArgumentException("Parameter jitter must be between 0 and 1.");
+        }
+        this.jitter = jitter;
+        return this;
+    }
+
+    /**
+     * Schaltet die vorzeitige Neuerzeugung nach dem XFetch-Verfahren ein. Jeder Zugriff erzeugt den
+     * Wert mit einer Wahrscheinlichkeit neu, die zum Ablauf hin steigt und mit der gemessenen Dauer
+     * der letzten Neuerzeugung gewichtet ist. Teure Werte werden so rechtzeitig von einem einzelnen
+     * Aufrufer erneuert, bevor alle gleichzeitig auf den Ablauf stoßen.
+     *
+     * Sollte direkt nach dem Konstruktor aufgerufen werden.
+     *
+     * @param beta Gewichtung, <code>1</code> ist ein guter Startwert, größere Werte erneuern früher.
+     * @return Diese Instanz.
+     */
+    public final PhoenixValue<T> earlyExpiry(final double beta) {
+        this.earlyExpiry = Math.max(0, beta);
+        return this;
+    }
+
+    /**
+     * Nimmt den Wert in die angegebenen Gruppen auf, damit er mit {@link Fire#burnGroup(String)}
+     * gezielt verbrannt werden kann, z.B. wenn sich ein Teil der Konfiguration ändert.
+     *
+     * @param groups Namen der Gruppen.
+     * @return Diese Instanz.
+     */
+    public final PhoenixValue<T> inGroup(final String... groups) {
+        for (final String group : groups) {
+            Objects.checkParam(group, "group");
+            FIRE.join(fireRef, group);
+        }
+        return this;
+    }
+
+    /**
+     * Schaltet die Erneuerung im Hintergrund ein. Der Wert wird dann um den angegebenen Anteil seiner
+     * Lebenszeit vor dem Ablauf auf einem gemeinsamen Scheduler neu erzeugt, so dass {@link #get()}
+     * nach der ersten Erzeugung nicht mehr warten muss. Schlägt die Erneuerung fehl, wird sie mit
+     * wachsendem Abstand einige Male wiederholt, höchstens bis der Wert abläuft und {@link #get()} selbst
+     * übernimmt. Werte, die seit der letzten Erneuerung nicht gelesen wurden, werden nicht erneuert.
+     *
+     * Sollte direkt nach dem Konstruktor aufgerufen werden.
+     *
+     * @param fraction Anteil der Lebenszeit zwischen <code>0</code> (aus) und <code>1</code>,
+     *                 z.B. <code>0.2</code> für eine Erneuerung nach 80% der Lebenszeit.
+     * @return Diese Instanz.
+     */
+    public final PhoenixValue<T> refreshAhead(final double fraction) {
+        if (fraction < 0 || fraction >= 1) {
+            throw new IllegalArgumentException("Parameter fraction must be between 0 and 1.");
+        }
+        this.refreshAhead = fraction;
+        return this;
+    }
+
+    private T rebirth(final FleetingValue<T> expired) {
+        // Nach einem Fehler wird die Quelle bis zum nächsten Versuch nicht gefragt.
+        RuntimeException failure = backoffFailure();
+        if (failure != null) {
+            return duringBackoff(expired, failure);
+        }
+
+        final T stale = expired.peek();
+        if (stale != null) {
+            if (!rebirthLock.tryLock()) {
+                return staleHit(stale);
+            }
+        } else {
+            rebirthLock.lock();
+        }
+
+        try {
+            // Vielleicht war ein anderer Thread schneller.
+            final FleetingValue<T> current = value;
+            if (current.isValid()) {
+                return hit(current.peek());
+            }
+
+            // Oder ist gerade gescheitert, dann nicht gleich noch einmal fragen.
+            failure = backoffFailure();
+            if (failure != null) {
+                return duringBackoff(current, failure);
+            }
+
+            try {
+                return reborn();
+            } catch (RuntimeException e) {
+                failed(e);
+                if (!isServable(current)) {
+                    throw e;
+                }
+                return staleHit(current.peek());
+            }
+        } finally {
+            rebirthLock.unlock();
+        }
+    }
+
+    /**
+     * XFetch: Der Wert gilt vorzeitig als abgelaufen, wenn <code>jetzt - Kosten * beta * ln(zufall)</code>
+     * den Ablaufzeitpunkt erreicht.
+     */
+    private boolean expiresEarly(final FleetingValue<T> current) {
+        final double cost = rebirthCost / 1000000.0;
+        final double random = ThreadLocalRandom.current().nextDouble();
+        return System.currentTimeMillis() - cost * earlyExpiry * Math.log(random) >= current.validUntil();
+    }
+
+    /**
+     * Vorzeitige Neuerzeugung eines noch gültigen Wertes. Läuft schon eine Neuerzeugung oder schlägt
+     * sie fehl, wird einfach der noch gültige Wert geliefert. Ein Fehler verschiebt den nächsten
+     * Versuch wie bei {@link #rebirth(FleetingValue)}.
+     */
+    private T rebirthEarly(final FleetingValue<T> current) {
+        if (System.currentTimeMillis() < retryAt || !rebirthLock.tryLock()) {
+            return hit(current.peek());
+        }
+
+        try {
+            final FleetingValue<T> latest = value;
+            if (latest != current && latest.isValid()) {
+                return hit(latest.peek());
+            }
+            return reborn();
+        } catch (RuntimeException e) {
+            failed(e);
+            return hit(current.peek());
+        } finally {
+            rebirthLock.unlock();
+        }
+    }
+
+    /**
+     * Merkt sich den Fehler und legt bei {@link #staleOnError(int)} fest, wann frühestens ein neuer
+     * Versuch gestartet wird. Muss unter {@link #rebirthLock} aufgerufen werden.
+     */
+    private void failed(final RuntimeException e) {
+        failures++;
+        if (staleWindow > 0) {
+            lastFailure = e;
+            retryAt = System.currentTimeMillis() + backoff(failures);
+        }
+    }
+
+    /**
+     * @return Der letzte Fehler, solange noch kein neuer Versuch gestartet werden darf, sonst <code>null</code>.
+     */
+    private RuntimeException backoffFailure() {
+        final RuntimeException failure = lastFailure;
+        return failure != null && System.currentTimeMillis() < retryAt ? failure : null;
+    }
+
+    /**
+     * Liefert bis zum nächsten Versuch den alten Wert oder wirft einen neuen Fehler mit dem letzten
+     * als Ursache, damit sich die Aufrufer keine Exception-Instanz teilen.
+     */
+    private T duringBackoff(final FleetingValue<T> expired, final RuntimeException failure) {
+        if (isServable(expired)) {
+            return staleHit(expired.peek());
+        }
+        throw new IllegalStateException("Rebirth failed recently, next attempt after backoff.", failure);
+    }
+
+    /**
+     * Prüft, ob der abgelaufene Wert nach einem Fehler noch geliefert werden darf.
+     */
+    private boolean isServable(final FleetingValue<T> expired) {
+        final int window = staleWindow;
+        return window > 0 && expired.peek() != null && System.currentTimeMillis() - expired.validUntil() < window;
+    }
+
+    private T staleHit(final T stale) {
+        final PhoenixStatistics stats = statistics;
+        if (stats != null) {
+            stats.staleHit();
+        }
+        return stale;
+    }
+
+    /**
+     * Exponentiell wachsender Abstand zwischen zwei Versuchen, zufällig auf 50% bis 100% verkürzt,
+     * damit fehlgeschlagene Werte nicht alle gleichzeitig wieder anfragen.
+     */
+    private static long backoff(final int failures) {
+        final long delay = Math.min(Refresher.MAX_BACKOFF, Refresher.MIN_BACKOFF << Math.min(failures, 16));
+        return (long) (delay * ThreadLocalRandom.current().nextDouble(0.5, 1.0));
+    }
+
+    /**
+     * Erzeugt den Wert neu und veröffentlicht ihn. Muss unter {@link #rebirthLock} aufgerufen werden.
+     */
+    private T reborn() {
+        final int burns = burnCount.get();
+
+        // Die Abhängigkeiten werden bei jeder Erzeugung neu ermittelt.
+        for (final PhoenixValue<?> source : sources) {
+            source.dependents.remove(this);
+        }
+        sources.clear();
+
+        final PhoenixStatistics stats = statistics;
+        final PhoenixRebirthEvent event = new PhoenixRebirthEvent();
+        event.begin();
+        final long start = System.nanoTime();
+        boolean failed = true;
+
+        final PhoenixValue<?> outer = REBIRTHING.get();
+        REBIRTHING.set(this);
+        final T val;
+        try {
+            val = ash.rebirth();
+            failed = false;
+        } finally {
+            if (outer == null) {
+                REBIRTHING.remove();
+            } else {
+                REBIRTHING.set(outer);
+            }
+
+            final long cost = System.nanoTime() - start;
+            rebirthCost = cost;
+            if (stats != null) {
+                stats.rebirth(cost, failed);
+            }
+            event.end();
+            if (event.shouldCommit()) {
+                event.name = stats != null ? stats.getName() : ash.getClass().getName();
+                event.failed = failed;
+                event.commit();
+            }
+        }
+        if (burns == burnCount.get()) {
+            final int ttl = val == null ? nullTimeToLive : timeToLive;
+            final FleetingValue<T> reborn = new FleetingValue<>(val, ttl, jitter);
+            value = reborn;
+            failures = 0;
+            retryAt = 0;
+            lastFailure = null;
+            if (ttl > 0) {
+                scheduleRefresh((long) ((reborn.validUntil() - System.currentTimeMillis()) * (1 - refreshAhead)));
+            }
+        }
+        return val;
+    }
+
+    /**
+     * Erneuerung im Hintergrund, aufgerufen vom {@link Refresher}. Wurde der Wert seit der letzten
+     * Erneuerung nicht gelesen, läuft er einfach ab. Fehlgeschlagene Erneuerungen werden höchstens
+     * {@link Refresher#MAX_FAILURES} Mal und nur bis zum Ablauf des Wertes wiederholt, danach übernimmt
+     * {@link #get()}.
+     */
+    private void refresh(final long generation) {
+        synchronized (refreshLock) {
+            if (generation != refreshGeneration) {
+                // Inzwischen verworfen oder neu geplant, z.B. durch burn() oder eine Neuerzeugung.
+                return;
+            }
+            refreshTask = null;
+        }
+        if (!accessed) {
+            return;
+        }
+        accessed = false;
+
+        rebirthLock.lock();
+        try {
+            reborn();
+        } catch (RuntimeException e) {
+            // Der alte Wert bleibt bis zu seinem Ablauf erhalten.
+            failures++;
+            final long delay = backoff(failures);
+            if (failures < Refresher.MAX_FAILURES && System.currentTimeMillis() + delay < value.validUntil()) {
+                scheduleRefresh(delay);
+            }
+        } finally {
+            rebirthLock.unlock();
+        }
+    }
+
+    /**
+     * Verwirft eine geplante Erneuerung, z.B. weil der Wert verbrannt wurde. Er wird dann erst beim
+     * nächsten {@link #get()} neu erzeugt.
+     */
+    private void cancelRefresh() {
+        synchronized (refreshLock) {
+            refreshGeneration++;
+            if (refreshTask != null) {
+                refreshTask.cancel(false);
+                refreshTask = null;
+            }
+        }
+    }
+
+    private void scheduleRefresh(final long delay) {
+        if (refreshAhead > 0 && timeToLive < Integer.MAX_VALUE) {
+            synchronized (refreshLock) {
+                if (refreshTask != null) {
+                    refreshTask.cancel(false);
+                }
+                refreshTask = Refresher.schedule(this, delay, ++refreshGeneration);
+            }
+        }
+    }
+
+    /**
+     * Gemeinsamer Scheduler für die Erneuerung im Hintergrund. Die Neuerzeugung selbst läuft auf
+     * virtuellen Threads, sofern die JVM sie anbietet, sonst auf einem Pool von Daemon-Threads.
+     * Geplante Aufgaben halten ihren Wert nur schwach, so dass er weiterhin verworfen werden kann.
+     */
+    private static final class Refresher {
+        private static final long MIN_BACKOFF = 100;
+        private static final long MAX_BACKOFF = 60000;
+        private static final int MAX_FAILURES = 5;
+        private static final ScheduledExecutorService TIMER = Executors.newSingleThreadScheduledExecutor(
+                daemonThreads("PhoenixValue-Refresher"));
+        private static final ExecutorService WORKERS = createWorkers();
+
+        private static ScheduledFuture<?> schedule(final PhoenixValue<?> phoenixValue, final long delay,
+                                                   final long generation) {
+            final WeakReference<PhoenixValue<?>> weakRef = new WeakReference<PhoenixValue<?>>(phoenixValue);
+            return TIMER.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    final PhoenixValue<?> phoenixValue = weakRef.get();
+                    if (phoenixValue != null) {
+                        WORKERS.execute(new Runnable() {
+                            @Override
+                            public void run() {
+                                phoenixValue.refresh(generation);
+                            }
+                        });
+                    }
+                }
+            }, Math.max(0, delay), TimeUnit.MILLISECONDS);
+        }
+
+        private static ExecutorService createWorkers() {
+            try {
+                return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+            } catch (ReflectiveOperationException | RuntimeException e) {
+                return Executors.newCachedThreadPool(daemonThreads("PhoenixValue-Rebirth"));
+            }
+        }
+
+        private static ThreadFactory daemonThreads(final String name) {
+            return new ThreadFactory() {
+                @Override
+                public Thread newThread(final Runnable runnable) {
+                    final Thread thread = new Thread(runnable, name);
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            };
+        }
     }
 
     /**
@@ -76,28 +689,104 @@ public final class PhoenixValue<T> {
     }
 
     /**
-     *
+     * Verzeichnis aller PhoenixValues (und {@link AsyncPhoenixValue}s), um sie gemeinsam oder gruppenweise verbrennen zu können.
+     * Die Werte werden nur schwach gehalten, verworfene Werte werden über eine ReferenceQueue
+     * bei der nächsten Gelegenheit ausgetragen.
      */
     public static final class Fire {
-        private final List<WeakReference<PhoenixValue>> phoenixValues = Collections.synchronizedList(new ArrayList<>());
+        private final ReferenceQueue<Flammable> queue = new ReferenceQueue<>();
+        private final Set<PhoenixRef> phoenixValues = ConcurrentHashMap.newKeySet();
+        private final ConcurrentMap<String, Set<PhoenixRef>> groups = new ConcurrentHashMap<>();
 
         public final void add(final PhoenixValue phoenixValue) {
-            phoenixValues.add(new WeakReference<>(phoenixValue));
+            register(phoenixValue);
+        }
+
+        /**
+         * Verbrennt alle Werte, die zur angegebenen Gruppe gehören.
+         * Der Aufwand hängt nur von der Größe der Gruppe ab.
+         *
+         * @param group Name der Gruppe.
+         */
+        public final void burnGroup(final String group) {
+            expunge();
+            final Set<PhoenixRef> members = groups.get(group);
+            if (members != null) {
+                burn(members);
+            }
+        }
+
+        /**
+         * Liefert die Statistiken aller benannten PhoenixValues.
+         *
+         * @return Die Statistiken in keiner bestimmten Reihenfolge.
+         */
+        public final List<PhoenixStatistics> statistics() {
+            expunge();
+            final List<PhoenixStatistics> result = new ArrayList<>();
+            for (final PhoenixRef ref : phoenixValues) {
+                final Flammable flammable = ref.get();
+                if (flammable instanceof PhoenixValue) {
+                    final PhoenixStatistics stats = ((PhoenixValue) flammable).getStatistics();
+                    if (stats != null) {
+                        result.add(stats);
+                    }
+                }
+            }
+            return result;
         }
 
         public final void burnAll() {
-            final Set<WeakReference> dead = new HashSet<>();
-            for (final WeakReference<PhoenixValue> weakRef : new ArrayList<>(phoenixValues)) {
-                final PhoenixValue phoenixValue = weakRef == null ? null : weakRef.get();
-                if (phoenixValue == null) {
-                    if (weakRef != null) {
-                        dead.add(weakRef);
+            expunge();
+            burn(phoenixValues);
+        }
+
+        final PhoenixRef register(final Flammable flammable) {
+            expunge();
+            final PhoenixRef ref = new PhoenixRef(flammable, queue);
+            phoenixValues.add(ref);
+            return ref;
+        }
+
+        final void join(final PhoenixRef ref, final String group) {
+            if (ref.groups.add(group)) {
+                groups.computeIfAbsent(group, new Function<String, Set<PhoenixRef>>() {
+                    @Override
+                    public Set<PhoenixRef> apply(final String name) {
+                        return ConcurrentHashMap.newKeySet();
+                    }
+                }).add(ref);
+            }
+        }
+
+        private static void burn(final Set<PhoenixRef> refs) {
+            for (final PhoenixRef ref : refs) {
+                final Flammable flammable = ref.get();
+                if (flammable != null) {
+                    flammable.burn();
+                }
+            }
+        }
+
+        private void expunge() {
+            for (Reference<? extends Flammable> dead = queue.poll(); dead != null; dead = queue.poll()) {
+                final PhoenixRef ref = (PhoenixRef) dead;
+                phoenixValues.remove(ref);
+                for (final String group : ref.groups) {
+                    final Set<PhoenixRef> members = groups.get(group);
+                    if (members != null) {
+                        members.remove(ref);
                     }
-                } else {
-                    phoenixValue.burn();
                 }
             }
-            phoenixValues.removeAll(dead);
+        }
+
+        static final class PhoenixRef extends WeakReference<Flammable> {
+            private final Set<String> groups = ConcurrentHashMap.newKeySet();
+
+            private PhoenixRef(final Flammable flammable, final ReferenceQueue<Flammable> queue) {
+                super(flammable, queue);
+            }
         }
     }
 }
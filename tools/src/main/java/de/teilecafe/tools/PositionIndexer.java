@@ -0,0 +1,444 @@
+package de.teilecafe.tools;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * Stellt alle Indizes eines Objektes in einem Array bzw. einer Collection zur Verfügung, nicht nur den
+ * ersten und letzten wie der {@link Indexer}.
+ *
+ * Die Positionen jedes Objektes werden aufsteigend und komprimiert abgelegt: Als Abstände in
+ * variabler Länge (7 Bit pro Byte) oder, wenn das Objekt dicht genug vorkommt, als Bitmap über den
+ * Bereich zwischen erster und letzter Position. Es wird jeweils die kleinere Darstellung gewählt,
+ * so dass häufige Objekte kaum mehr als ein Bit und seltene kaum mehr als ihre Abstände kosten.
+ * Damit {@link #nthIndexOf(Object, int)} nicht alles dekodieren muss, wird für jeden 64. Eintrag bzw.
+ * jedes achte Bitmap-Wort ein Stützpunkt gemerkt.
+ *
+ * Die Klasse ist unveränderlich und damit threadsicher.
+ *
+ * @author Bob Tehl
+ */
+public class PositionIndexer {
+    /**
+     * Platzhalter für den Schlüssel <code>null</code>, da <code>null</code> in der Tabelle einen freien Platz markiert.
+     */
+    private static final Object NULL_KEY = new Object();
+    private static final int[] NO_POSITIONS = new int[0];
+
+    /**
+     * Abstand der Stützpunkte in Einträgen bei Abständen bzw. in Worten bei Bitmaps.
+     */
+    private static final int SAMPLE_ENTRIES = 64;
+    private static final int SAMPLE_WORDS = 8;
+
+    private final Object[] keys;
+    private final int[] ids;
+    private final int size;
+
+    private final int[] counts;
+    private final int[] firstIndices;
+    private final int[] lastIndices;
+
+    /**
+     * Offset der Abstände in {@link #deltas} oder, wenn negativ, bitweise negierter Offset der Bitmap in {@link #words}.
+     */
+    private final int[] offsets;
+    private final int[] sampleOffsets;
+
+    private final byte[] deltas;
+    private final long[] words;
+    private final int[] samples;
+
+    /**
+     * Stellt alle Indizes eines Objektes in einem Array zur Verfügung.
+     */
+    public PositionIndexer(final Object[] objects) {
+        this(Table.of(Arrays.asList(objects), objects.length));
+    }
+
+    /**
+     * Stellt alle Indizes eines Objektes in einer Collection zur Verfügung.
+     */
+    public PositionIndexer(final Collection collection) {
+        this(Table.of(collection, collection.size()));
+    }
+
+    /**
+     * Übernimmt die fertig aufgebaute und kodierte Tabelle. Alle Felder werden genau einmal gesetzt, damit der
+     * Index auch ohne Synchronisation sicher an andere Threads weitergegeben werden kann.
+     */
+    private PositionIndexer(final Table table) {
+        this.keys = table.keys;
+        this.ids = table.ids;
+        this.size = table.size;
+        this.counts = table.counts;
+        this.firstIndices = table.firstIndices;
+        this.lastIndices = table.lastIndices;
+        this.offsets = table.offsets;
+        this.sampleOffsets = table.sampleOffsets;
+        this.deltas = table.deltas;
+        this.words = table.words;
+        this.samples = table.samples;
+    }
+
+    /**
+     * Liefert den ersten Index des Objektes.
+     */
+    public int indexOf(final Object o) {
+        final int id = find(o);
+        return id >= 0 ? firstIndices[id] : -1;
+    }
+
+    /**
+     * Liefert den letzten Index des Objektes.
+     */
+    public int lastIndexOf(final Object o) {
+        final int id = find(o);
+        return id >= 0 ? lastIndices[id] : -1;
+    }
+
+    /**
+     * Liefert, wie oft das Objekt vorkommt.
+     */
+    public int countOf(final Object o) {
+        final int id = find(o);
+        return id >= 0 ? counts[id] : 0;
+    }
+
+    /**
+     * Liefert den Index des n-ten Vorkommens des Objektes, gezählt ab 0.
+     *
+     * @param o Objekt.
+     * @param n Nummer des Vorkommens.
+     * @return Der Index oder -1, wenn das Objekt nicht so oft vorkommt.
+     */
+    public int nthIndexOf(final Object o, final int n) {
+        final int id = find(o);
+        if (id < 0 || n < 0 || n >= counts[id]) {
+            return -1;
+        } else if (n == 0) {
+            return firstIndices[id];
+        } else if (n == counts[id] - 1) {
+            return lastIndices[id];
+        }
+        return offsets[id] >= 0 ? nthDelta(id, n) : nthBit(id, n);
+    }
+
+    /**
+     * Liefert alle Indizes des Objektes aufsteigend.
+     *
+     * @param o Objekt.
+     * @return Die Indizes, nie <code>null</code>.
+     */
+    public int[] positionsOf(final Object o) {
+        final int id = find(o);
+        if (id < 0) {
+            return NO_POSITIONS;
+        }
+
+        final int[] positions = new int[counts[id]];
+        final int offset = offsets[id];
+        if (offset >= 0) {
+            int position = firstIndices[id];
+            positions[0] = position;
+            int at = offset;
+            for (int i = 1; i < positions.length; i++) {
+                int gap = 0;
+                int shift = 0;
+                byte b;
+                do {
+                    b = deltas[at++];
+                    gap |= (b & 0x7F) << shift;
+                    shift += 7;
+                } while (b < 0);
+                position += gap;
+                positions[i] = position;
+            }
+        } else {
+            final int wordOffset = ~offset;
+            final int wordCount = wordCount(id);
+            int i = 0;
+            for (int w = 0; w < wordCount; w++) {
+                for (long word = words[wordOffset + w]; word != 0; word &= word - 1) {
+                    positions[i++] = firstIndices[id] + w * 64 + Long.numberOfTrailingZeros(word);
+                }
+            }
+        }
+        return positions;
+    }
+
+    /**
+     * Liefert die Anzahl der unterschiedlichen Objekte.
+     */
+    public int size() {
+        return size;
+    }
+
+    private int nthDelta(final int id, final int n) {
+        final int block = n / SAMPLE_ENTRIES;
+        int position;
+        int at;
+        if (block == 0) {
+            position = firstIndices[id];
+            at = offsets[id];
+        } else {
+            final int sample = sampleOffsets[id] + 2 * (block - 1);
+            position = samples[sample];
+            at = samples[sample + 1];
+        }
+
+        for (int i = block * SAMPLE_ENTRIES; i < n; i++) {
+            int gap = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = deltas[at++];
+                gap |= (b & 0x7F) << shift;
+                shift += 7;
+            } while (b < 0);
+            position += gap;
+        }
+        return position;
+    }
+
+    private int nthBit(final int id, final int n) {
+        final int wordOffset = ~offsets[id];
+        final int blocks = (wordCount(id) - 1) / SAMPLE_WORDS;
+
+        // Letzten Stützpunkt suchen, vor dem höchstens n Bits gesetzt sind.
+        int low = 0;
+        int high = blocks;
+        while (low < high) {
+            final int mid = (low + high + 1) >>> 1;
+            if (samples[sampleOffsets[id] + mid - 1] <= n) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+
+        int remaining = n - (low == 0 ? 0 : samples[sampleOffsets[id] + low - 1]);
+        for (int w = low * SAMPLE_WORDS; ; w++) {
+            long word = words[wordOffset + w];
+            final int bits = Long.bitCount(word);
+            if (remaining < bits) {
+                for (; remaining > 0; remaining--) {
+                    word &= word - 1;
+                }
+                return firstIndices[id] + w * 64 + Long.numberOfTrailingZeros(word);
+            }
+            remaining -= bits;
+        }
+    }
+
+    private int wordCount(final int id) {
+        return wordCount(firstIndices[id], lastIndices[id]);
+    }
+
+    private int find(final Object o) {
+        final Object key = o == null ? NULL_KEY : o;
+        final int mask = keys.length - 1;
+        for (int slot = hash(key) & mask; ; slot = slot + 1 & mask) {
+            final Object existing = keys[slot];
+            if (existing == null) {
+                return -1;
+            } else if (existing == key || existing.equals(key)) {
+                return ids[slot];
+            }
+        }
+    }
+
+    private static int wordCount(final int first, final int last) {
+        return (last - first) / 64 + 1;
+    }
+
+    private static int varintLength(final int value) {
+        return (31 - Integer.numberOfLeadingZeros(value | 1)) / 7 + 1;
+    }
+
+    private static byte[] ensure(final byte[] array, final int length) {
+        return length <= array.length ? array : Arrays.copyOf(array, Math.max(length, array.length * 2));
+    }
+
+    private static long[] ensure(final long[] array, final int length) {
+        return length <= array.length ? array : Arrays.copyOf(array, Math.max(length, array.length * 2));
+    }
+
+    private static int[] ensure(final int[] array, final int length) {
+        return length <= array.length ? array : Arrays.copyOf(array, Math.max(length, array.length * 2));
+    }
+
+    /**
+     * Verteilt auch schlechte hashCode()-Werte gleichmäßig über die Tabelle.
+     */
+    private static int hash(final Object key) {
+        final int h = key.hashCode() * 0x9E3779B9;
+        return h ^ h >>> 16;
+    }
+
+    /**
+     * Tabelle im Aufbau. Erst die fertig kodierte Tabelle wird in einen {@link PositionIndexer} übernommen.
+     */
+    private static final class Table {
+        private Object[] keys = new Object[16];
+        private int[] ids = new int[16];
+        private int size;
+
+        private int[] counts = new int[8];
+        private int[] firstIndices = new int[8];
+        private int[] lastIndices = new int[8];
+
+        private int[] offsets;
+        private int[] sampleOffsets;
+
+        private byte[] deltas;
+        private long[] words;
+        private int[] samples;
+
+        private static Table of(final Iterable<?> objects, final int count) {
+            final Table table = new Table();
+            final int[] elementIds = new int[count];
+            int i = 0;
+            for (final Object o : objects) {
+                elementIds[i] = table.put(o, i);
+                i++;
+            }
+            table.encode(elementIds);
+            return table;
+        }
+
+        /**
+         * Zählt das Objekt am angegebenen Index und liefert seine Nummer.
+         */
+        private int put(final Object o, final int index) {
+            final Object key = o == null ? NULL_KEY : o;
+            final int mask = keys.length - 1;
+            for (int slot = hash(key) & mask; ; slot = slot + 1 & mask) {
+                final Object existing = keys[slot];
+                if (existing == null) {
+                    final int id = size++;
+                    keys[slot] = key;
+                    ids[slot] = id;
+                    counts[id] = 1;
+                    firstIndices[id] = index;
+                    lastIndices[id] = index;
+                    if (size * 2 >= keys.length) {
+                        grow();
+                    }
+                    return id;
+                } else if (existing == key || existing.equals(key)) {
+                    final int id = ids[slot];
+                    counts[id]++;
+                    lastIndices[id] = index;
+                    return id;
+                }
+            }
+        }
+
+        private void grow() {
+            final Object[] oldKeys = keys;
+            final int[] oldIds = ids;
+
+            keys = new Object[oldKeys.length * 2];
+            ids = new int[keys.length];
+            counts = Arrays.copyOf(counts, keys.length / 2);
+            firstIndices = Arrays.copyOf(firstIndices, keys.length / 2);
+            lastIndices = Arrays.copyOf(lastIndices, keys.length / 2);
+
+            final int mask = keys.length - 1;
+            for (int i = 0; i < oldKeys.length; i++) {
+                final Object key = oldKeys[i];
+                if (key != null) {
+                    int slot = hash(key) & mask;
+                    while (keys[slot] != null) {
+                        slot = slot + 1 & mask;
+                    }
+                    keys[slot] = key;
+                    ids[slot] = oldIds[i];
+                }
+            }
+        }
+
+        /**
+         * Sortiert die Positionen nach Objekten (Counting Sort, innerhalb eines Objektes bleiben sie aufsteigend)
+         * und kodiert sie jeweils in der kleineren Darstellung.
+         */
+        private void encode(final int[] elementIds) {
+            final int[] starts = new int[size + 1];
+            for (int id = 0; id < size; id++) {
+                starts[id + 1] = starts[id] + counts[id];
+            }
+            final int[] sorted = new int[elementIds.length];
+            final int[] fill = Arrays.copyOf(starts, size);
+            for (int i = 0; i < elementIds.length; i++) {
+                sorted[fill[elementIds[i]]++] = i;
+            }
+
+            counts = Arrays.copyOf(counts, size);
+            firstIndices = Arrays.copyOf(firstIndices, size);
+            lastIndices = Arrays.copyOf(lastIndices, size);
+            offsets = new int[size];
+            sampleOffsets = new int[size];
+
+            deltas = new byte[Math.max(16, elementIds.length)];
+            words = new long[16];
+            samples = new int[16];
+            int deltaLength = 0;
+            int wordLength = 0;
+            int sampleLength = 0;
+
+            for (int id = 0; id < size; id++) {
+                final int from = starts[id];
+                final int to = starts[id + 1];
+
+                int deltaBytes = 0;
+                for (int i = from + 1; i < to; i++) {
+                    deltaBytes += varintLength(sorted[i] - sorted[i - 1]);
+                }
+                final int wordCount = wordCount(firstIndices[id], lastIndices[id]);
+
+                sampleOffsets[id] = sampleLength;
+                if ((long) wordCount * 8 < deltaBytes) {
+                    offsets[id] = ~wordLength;
+                    words = ensure(words, wordLength + wordCount);
+                    for (int i = from; i < to; i++) {
+                        final int bit = sorted[i] - firstIndices[id];
+                        words[wordLength + (bit >>> 6)] |= 1L << bit;
+                    }
+
+                    final int blocks = (wordCount - 1) / SAMPLE_WORDS;
+                    samples = ensure(samples, sampleLength + blocks);
+                    int bits = 0;
+                    for (int w = 0; w < blocks * SAMPLE_WORDS; w++) {
+                        bits += Long.bitCount(words[wordLength + w]);
+                        if ((w + 1) % SAMPLE_WORDS == 0) {
+                            samples[sampleLength++] = bits;
+                        }
+                    }
+                    wordLength += wordCount;
+                } else {
+                    offsets[id] = deltaLength;
+                    deltas = ensure(deltas, deltaLength + deltaBytes);
+                    samples = ensure(samples, sampleLength + 2 * ((to - from - 1) / SAMPLE_ENTRIES));
+                    for (int i = from + 1; i < to; i++) {
+                        int gap = sorted[i] - sorted[i - 1];
+                        while (gap >= 0x80) {
+                            deltas[deltaLength++] = (byte) (gap | 0x80);
+                            gap >>>= 7;
+                        }
+                        deltas[deltaLength++] = (byte) gap;
+
+                        if ((i - from) % SAMPLE_ENTRIES == 0) {
+                            samples[sampleLength++] = sorted[i];
+                            samples[sampleLength++] = deltaLength;
+                        }
+                    }
+                }
+            }
+
+            deltas = Arrays.copyOf(deltas, deltaLength);
+            words = Arrays.copyOf(words, wordLength);
+            samples = Arrays.copyOf(samples, sampleLength);
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package de.teilecafe.tools;
+
+/**
+ * Gemeinsame Hash-Tabelle für {@link IntIndexer} und {@link LongIndexer}. Schlüssel, erster und letzter Index
+ * liegen in parallelen Arrays mit offener Adressierung. Die 0 markiert freie Plätze und wird deshalb außerhalb
+ * der Tabelle gemerkt. <code>int</code>-Werte werden als <code>long</code> abgelegt, damit es nur eine Suche gibt.
+ *
+ * Die Tabelle ist nur während des Aufbaus veränderlich, die Indexer übernehmen danach ihre Arrays.
+ *
+ * @author Bob Tehl
+ */
+final class PrimitiveTable {
+    static final int MAX_CAPACITY = 1 << 30;
+
+    final long[] keys;
+    final int[] firstIndices;
+    final int[] lastIndices;
+    int size;
+    int zeroFirst = -1;
+    int zeroLast = -1;
+
+    /**
+     * Legt die Tabelle so an, dass die angegebene Anzahl Werte bei höchstens halber Füllung Platz hat.
+     * Da die Anzahl vorab bekannt ist, muss die Tabelle nie wachsen.
+     */
+    PrimitiveTable(final int expected) {
+        final int capacity = capacity(expected);
+        keys = new long[capacity];
+        firstIndices = new int[capacity];
+        lastIndices = new int[capacity];
+    }
+
+    /**
+     * Kleinste Zweierpotenz, die mindestens doppelt so groß ist wie die erwartete Anzahl, höchstens
+     * aber {@link #MAX_CAPACITY}. Gerechnet wird mit long, damit große Anzahlen nicht überlaufen.
+     */
+    static int capacity(final int expected) {
+        final long wanted = Math.max(4, expected) * 2L;
+        return wanted >= MAX_CAPACITY ? MAX_CAPACITY : Integer.highestOneBit((int) wanted - 1) << 1;
+    }
+
+    /**
+     * Vermerkt den Wert am angegebenen Index. Die Indizes müssen aufsteigend vermerkt werden.
+     */
+    void put(final long key, final int index) {
+        if (key == 0) {
+            if (zeroFirst < 0) {
+                zeroFirst = index;
+            }
+            zeroLast = index;
+            return;
+        }
+
+        final int mask = keys.length - 1;
+        for (int slot = hash(key) & mask; ; slot = slot + 1 & mask) {
+            final long existing = keys[slot];
+            if (existing == 0) {
+                // Ein Platz bleibt immer frei, damit die Suche nach unbekannten Werten endet.
+                if (size == keys.length - 1) {
+                    throw new IllegalStateException("Too many distinct values, at most "
+                            + (MAX_CAPACITY - 1) + " are supported.");
+                }
+                keys[slot] = key;
+                firstIndices[slot] = index;
+                lastIndices[slot] = index;
+                size++;
+                return;
+            } else if (existing == key) {
+                lastIndices[slot] = index;
+                return;
+            }
+        }
+    }
+
+    /**
+     * Liefert den Platz des Wertes in der Tabelle oder -1, wenn er nicht vorhanden ist.
+     * Die 0 ist nie in der Tabelle.
+     */
+    static int find(final long[] keys, final long key) {
+        final int mask = keys.length - 1;
+        for (int slot = hash(key) & mask; ; slot = slot + 1 & mask) {
+            final long existing = keys[slot];
+            if (existing == 0) {
+                return -1;
+            } else if (existing == key) {
+                return slot;
+            }
+        }
+    }
+
+    /**
+     * Verteilt auch fortlaufende Werte gleichmäßig über die Tabelle.
+     */
+    private static int hash(final long key) {
+        final long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ h >>> 32);
+    }
+}
@@ -0,0 +1,354 @@
+package de.teilecafe.tools;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Unveränderlicher Index für feste Mengen von Schlüsseln, die sehr oft abgefragt werden. Er bietet dieselben
+ * Abfragen wie der {@link Indexer}, ist aber kein solcher.
+ *
+ * Die Schlüssel liegen über eine minimale perfekte Hash-Funktion nach dem CHD-Verfahren ("Compress, Hash
+ * and Displace") lückenlos in einem Array. Die Schlüssel werden dazu auf Buckets mit durchschnittlich
+ * fünf Schlüsseln verteilt. Für jeden Bucket wird, beginnend mit den größten, eine Verschiebung gesucht,
+ * unter der alle seine Schlüssel auf noch freie Plätze fallen. Buckets mit nur einem Schlüssel bekommen
+ * direkt einen freien Platz, der bitweise negiert abgelegt wird. Die Funktion belegt so ein int pro Bucket,
+ * rund 6,4 Bit pro Schlüssel.
+ *
+ * Eine Abfrage kostet zwei Hash-Berechnungen und genau einen Vergleich, es entstehen keine Objekte. Nur
+ * Schlüssel, deren hashCode() mit dem eines anderen Schlüssels übereinstimmt, kann keine Hash-Funktion
+ * trennen. Sie landen in einer kleinen Map. Zu jedem Platz wird der hashCode() seines Schlüssels gemerkt:
+ * Weicht er ab, kann das Objekt weder auf dem Platz noch in der Map liegen, die meisten Fehlgriffe kommen so
+ * ohne equals() aus. Nur bei gleichem hashCode() wird verglichen und erst dann die Map gefragt. Findet sich
+ * auch mit mehreren Salzen keine Hash-Funktion, landen alle Schlüssel in dieser Map.
+ *
+ * @author Bob Tehl
+ */
+public final class StaticIndexer {
+    /**
+     * Platzhalter für den Schlüssel <code>null</code>.
+     */
+    private static final Object NULL_KEY = new Object();
+
+    private static final int BUCKET_SIZE = 5;
+    private static final int MAX_DISPLACEMENTS = 1 << 20;
+    private static final int MAX_SALTS = 16;
+    private static final long GOLDEN = 0x9E3779B97F4A7C15L;
+
+    private final Object[] keys;
+    private final int[] hashCodes;
+    private final int[] firstIndices;
+    private final int[] lastIndices;
+    private final Map<Object, Integer> overflow;
+    private final int[] displacements;
+    private final long salt;
+
+    /**
+     * Stellt den Index eines Objektes in einem Array zur Verfügung.
+     * Es ist sowohl der erste Index, als auch der letzte Index verfügbar.
+     */
+    public StaticIndexer(final Object[] objects) {
+        this(Arrays.asList(objects));
+    }
+
+    /**
+     * Stellt den Index eines Objektes in einer Collection zur Verfügung.
+     * Es ist sowohl der erste Index, als auch der letzte Index verfügbar.
+     */
+    public StaticIndexer(final Collection collection) {
+        // Unterschiedliche Schlüssel mit erstem und letztem Index sammeln.
+        final Map<Object, Integer> ids = new HashMap<>();
+        Object[] distinct = new Object[16];
+        int[] first = new int[16];
+        int[] last = new int[16];
+        int n = 0;
+        int index = 0;
+        for (final Object o : collection) {
+            final Object key = o == null ? NULL_KEY : o;
+            final Integer id = ids.get(key);
+            if (id == null) {
+                if (n == distinct.length) {
+                    distinct = Arrays.copyOf(distinct, n * 2);
+                    first = Arrays.copyOf(first, n * 2);
+                    last = Arrays.copyOf(last, n * 2);
+                }
+                ids.put(key, n);
+                distinct[n] = key;
+                first[n] = index;
+                last[n] = index;
+                n++;
+            } else {
+                last[id] = index;
+            }
+            index++;
+        }
+
+        // Schlüssel mit gleichem hashCode() abtrennen, sie kann keine Hash-Funktion unterscheiden.
+        final long[] byHash = new long[n];
+        for (int id = 0; id < n; id++) {
+            byHash[id] = (long) distinct[id].hashCode() << 32 | id;
+        }
+        Arrays.sort(byHash);
+
+        final int[] members = new int[n];
+        int m = 0;
+        Map<Object, Integer> collisions = null;
+        for (int i = 0; i < n; i++) {
+            final int id = (int) byHash[i];
+            if (i > 0 && byHash[i] >>> 32 == byHash[i - 1] >>> 32) {
+                if (collisions == null) {
+                    collisions = new HashMap<>();
+                }
+                collisions.put(distinct[id], id);
+            } else {
+                members[m++] = id;
+            }
+        }
+
+        Placement placement = place(distinct, members, m);
+        if (placement == null) {
+            // Keine Hash-Funktion gefunden, alle Schlüssel über die Map suchen.
+            if (collisions == null) {
+                collisions = new HashMap<>();
+            }
+            for (int i = 0; i < m; i++) {
+                collisions.put(distinct[members[i]], members[i]);
+            }
+            m = 0;
+            placement = new Placement(0, new int[1], new int[0]);
+        }
+        salt = placement.salt;
+        displacements = placement.displacements;
+
+        keys = new Object[m];
+        hashCodes = new int[m];
+        firstIndices = new int[m + (collisions == null ? 0 : collisions.size())];
+        lastIndices = new int[firstIndices.length];
+
+        for (int i = 0; i < m; i++) {
+            final int id = members[i];
+            final int slot = placement.slots[i];
+            keys[slot] = distinct[id];
+            hashCodes[slot] = distinct[id].hashCode();
+            firstIndices[slot] = first[id];
+            lastIndices[slot] = last[id];
+        }
+
+        // Die abgetrennten Schlüssel bekommen die Plätze hinter der Hash-Funktion.
+        if (collisions != null) {
+            int slot = m;
+            for (final Map.Entry<Object, Integer> entry : collisions.entrySet()) {
+                firstIndices[slot] = first[entry.getValue()];
+                lastIndices[slot] = last[entry.getValue()];
+                entry.setValue(slot++);
+            }
+        }
+        overflow = collisions;
+    }
+
+    /**
+     * Liefert den ersten Index des Objektes.
+     */
+    public int indexOf(final Object o) {
+        final int slot = find(o);
+        return slot >= 0 ? firstIndices[slot] : -1;
+    }
+
+    /**
+     * Liefert den letzten Index des Objektes.
+     */
+    public int lastIndexOf(final Object o) {
+        final int slot = find(o);
+        return slot >= 0 ? lastIndices[slot] : -1;
+    }
+
+    /**
+     * Liefert die Anzahl der unterschiedlichen Objekte.
+     */
+    public int size() {
+        return firstIndices.length;
+    }
+
+    private int find(final Object o) {
+        if (keys.length == 0 && overflow == null) {
+            return -1;
+        }
+
+        final Object key = o == null ? NULL_KEY : o;
+        if (keys.length > 0) {
+            final int hashCode = key.hashCode();
+            final int slot = slot(mix(hashCode + salt));
+            if (hashCodes[slot] != hashCode) {
+                // Schlüssel mit diesem hashCode() lägen alle auf diesem Platz bzw. in der Map daneben.
+                return -1;
+            }
+            final Object existing = keys[slot];
+            if (existing == key || existing.equals(key)) {
+                return slot;
+            }
+        }
+        if (overflow != null) {
+            final Integer slot = overflow.get(key);
+            return slot != null ? slot : -1;
+        }
+        return -1;
+    }
+
+    private static long hash(final Object key, final long salt) {
+        return mix(key.hashCode() + salt);
+    }
+
+    private int slot(final long hash) {
+        final int displacement = displacements[bucket(hash, displacements.length)];
+        return displacement < 0 ? ~displacement : position(hash, displacement, keys.length);
+    }
+
+    /**
+     * Sucht die Verschiebungen und liefert zu jedem Schlüssel seinen Platz. Findet sich für einen Bucket
+     * keine Verschiebung, wird mit einem anderen Salz von vorne begonnen, höchstens {@link #MAX_SALTS} Mal.
+     *
+     * @return Die gefundene Hash-Funktion oder <code>null</code>, wenn keine gefunden wurde.
+     */
+    private static Placement place(final Object[] distinct, final int[] members, final int m) {
+        final int bucketCount = Math.max(1, (m + BUCKET_SIZE - 1) / BUCKET_SIZE);
+        final long[] hashes = new long[m];
+        final int[] slots = new int[m];
+
+        for (long salt = 0; salt < MAX_SALTS; salt++) {
+            for (int i = 0; i < m; i++) {
+                hashes[i] = hash(distinct[members[i]], salt);
+            }
+            final int[] displacements = tryPlace(hashes, slots, bucketCount);
+            if (displacements != null) {
+                return new Placement(salt, displacements, slots);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return Die Verschiebungen je Bucket oder <code>null</code>, wenn ein Bucket nicht unterzubringen war.
+     */
+    private static int[] tryPlace(final long[] hashes, final int[] slots, final int bucketCount) {
+        final int m = hashes.length;
+
+        // Schlüssel nach Buckets sortieren (Counting Sort).
+        final int[] starts = new int[bucketCount + 1];
+        for (final long hash : hashes) {
+            starts[bucket(hash, bucketCount) + 1]++;
+        }
+        for (int b = 0; b < bucketCount; b++) {
+            starts[b + 1] += starts[b];
+        }
+        final int[] entries = new int[m];
+        final int[] fill = Arrays.copyOf(starts, bucketCount);
+        for (int i = 0; i < m; i++) {
+            entries[fill[bucket(hashes[i], bucketCount)]++] = i;
+        }
+
+        // Buckets absteigend nach Größe ordnen (Counting Sort).
+        int largest = 0;
+        for (int b = 0; b < bucketCount; b++) {
+            largest = Math.max(largest, starts[b + 1] - starts[b]);
+        }
+        final int[] sizeStarts = new int[largest + 2];
+        for (int b = 0; b < bucketCount; b++) {
+            sizeStarts[largest - (starts[b + 1] - starts[b]) + 1]++;
+        }
+        for (int s = 0; s <= largest; s++) {
+            sizeStarts[s + 1] += sizeStarts[s];
+        }
+        final int[] order = new int[bucketCount];
+        for (int b = 0; b < bucketCount; b++) {
+            order[sizeStarts[largest - (starts[b + 1] - starts[b])]++] = b;
+        }
+
+        final int[] result = new int[bucketCount];
+        final boolean[] taken = new boolean[m];
+        int nextFree = 0;
+        for (final int b : order) {
+            final int from = starts[b];
+            final int to = starts[b + 1];
+            if (to - from == 0) {
+                break;
+            } else if (to - from == 1) {
+                while (taken[nextFree]) {
+                    nextFree++;
+                }
+                taken[nextFree] = true;
+                slots[entries[from]] = nextFree;
+                result[b] = ~nextFree;
+                continue;
+            }
+
+            int displacement = 0;
+            while (!fits(hashes, entries, from, to, displacement, taken, slots)) {
+                if (++displacement == MAX_DISPLACEMENTS) {
+                    return null;
+                }
+            }
+            for (int i = from; i < to; i++) {
+                taken[slots[entries[i]]] = true;
+            }
+            result[b] = displacement;
+        }
+        return result;
+    }
+
+    /**
+     * Prüft, ob alle Schlüssel des Buckets unter der Verschiebung auf unterschiedliche freie Plätze fallen.
+     */
+    private static boolean fits(final long[] hashes, final int[] entries, final int from, final int to,
+                                final int displacement, final boolean[] taken, final int[] slots) {
+        final int m = hashes.length;
+        for (int i = from; i < to; i++) {
+            final int slot = position(hashes[entries[i]], displacement, m);
+            if (taken[slot]) {
+                return false;
+            }
+            for (int j = from; j < i; j++) {
+                if (slots[entries[j]] == slot) {
+                    return false;
+                }
+            }
+            slots[entries[i]] = slot;
+        }
+        return true;
+    }
+
+    private static int bucket(final long hash, final int bucketCount) {
+        return (int) ((hash >>> 32) * bucketCount >>> 32);
+    }
+
+    private static int position(final long hash, final int displacement, final int m) {
+        return (int) ((mix(hash + displacement * GOLDEN) >>> 32) * m >>> 32);
+    }
+
+    /**
+     * Gefundene Hash-Funktion samt Platz jedes Schlüssels.
+     */
+    private static final class Placement {
+        private final long salt;
+        private final int[] displacements;
+        private final int[] slots;
+
+        private Placement(final long salt, final int[] displacements, final int[] slots) {
+            this.salt = salt;
+            this.displacements = displacements;
+            this.slots = slots;
+        }
+    }
+
+    /**
+     * Finalisierung aus MurmurHash3 (fmix64).
+     */
+    private static long mix(long value) {
+        value ^= value >>> 33;
+        value *= 0xFF51AFD7ED558CCDL;
+        value ^= value >>> 33;
+        value *= 0xC4CEB9FE1A85EC53L;
+        value ^= value >>> 33;
+        return value;
+    }
+}
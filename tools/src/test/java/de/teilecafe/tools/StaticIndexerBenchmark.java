@@ -0,0 +1,68 @@
+package de.teilecafe.tools;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Einfacher Zeitvergleich der Abfragen von {@link StaticIndexer} und {@link Indexer}.
+ *
+ * Beide werden über dieselben Schlüssel aufgebaut und dann abwechselnd mit bekannten und unbekannten
+ * Schlüsseln abgefragt. Die ersten Runden dienen nur dem Aufwärmen des JIT und werden nicht ausgegeben.
+ *
+ * Aufruf: <code>java de.teilecafe.tools.StaticIndexerBenchmark [Anzahl Schlüssel] [Runden]</code>
+ *
+ * @author Bob Tehl
+ */
+public final class StaticIndexerBenchmark {
+    private static final int WARMUP = 5;
+
+    private StaticIndexerBenchmark() {
+        super();
+    }
+
+    public static void main(final String[] args) {
+        final int count = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+        final int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+
+        final Random random = new Random(42);
+        final List<String> keys = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            keys.add("key-" + random.nextLong());
+        }
+        final String[] queries = new String[count * 2];
+        for (int i = 0; i < queries.length; i++) {
+            queries[i] = i % 2 == 0 ? keys.get(random.nextInt(count)) : "miss-" + random.nextLong();
+        }
+
+        long start = System.nanoTime();
+        final Indexer indexer = new Indexer(keys);
+        System.out.printf("Indexer       Aufbau %8.2f ms%n", (System.nanoTime() - start) / 1e6);
+        start = System.nanoTime();
+        final StaticIndexer staticIndexer = new StaticIndexer(keys);
+        System.out.printf("StaticIndexer Aufbau %8.2f ms%n", (System.nanoTime() - start) / 1e6);
+
+        for (int round = 0; round < WARMUP + rounds; round++) {
+            long sum = 0;
+            start = System.nanoTime();
+            for (final String query : queries) {
+                sum += indexer.indexOf(query);
+            }
+            final long indexerTime = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            for (final String query : queries) {
+                sum -= staticIndexer.indexOf(query);
+            }
+            final long staticTime = System.nanoTime() - start;
+
+            if (sum != 0) {
+                throw new IllegalStateException("Indexer und StaticIndexer liefern unterschiedliche Indizes.");
+            }
+            if (round >= WARMUP) {
+                System.out.printf("Runde %2d: Indexer %6.1f ns, StaticIndexer %6.1f ns je Abfrage%n", round - WARMUP + 1,
+                        (double) indexerTime / queries.length, (double) staticTime / queries.length);
+            }
+        }
+    }
+}